@@ -0,0 +1,73 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a recorded NWS gridpoint forecast (14 periods) by binding the full document and truncating it
+ * afterwards, with the streaming ForecastStreamParser. Binding and truncation are also measured on their own. Run with -Djmh.args="ForecastParsingBenchmark -prof gc" to
+ * also compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastParsingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ForecastStreamParser forecastParser = new ForecastStreamParser(objectMapper);
+
+    private byte[] forecastJson;
+    private WeatherForecast boundForecast;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream body = Objects.requireNonNull(getClass().getResourceAsStream("/nws/forecast.json"))) {
+            forecastJson = body.readAllBytes();
+        }
+        boundForecast = objectMapper.readValue(forecastJson, WeatherForecast.class);
+    }
+
+    // The previous approach: bind every period, then keep the first MAX_PERIODS.
+    @Benchmark
+    public WeatherForecast fullBindingThenTruncate() throws IOException {
+        return ForecastService.truncatedForecast(objectMapper.readValue(forecastJson, WeatherForecast.class));
+    }
+
+    @Benchmark
+    public WeatherForecast fullBinding() throws IOException {
+        return objectMapper.readValue(forecastJson, WeatherForecast.class);
+    }
+
+    @Benchmark
+    public WeatherForecast streamingTruncatingParse() throws IOException {
+        return forecastParser.parse(new ByteArrayInputStream(forecastJson), ForecastService.MAX_PERIODS);
+    }
+
+    // Truncation alone, of a forecast that has already been bound.
+    @Benchmark
+    public WeatherForecast truncate() {
+        return ForecastService.truncatedForecast(boundForecast);
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.dierauf.apple.forecast;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.config.ClusterProperties;
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.config.UpstreamRequestFactories;
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures ForecastService.getForecast, with LocationService and WeatherService stubbed, so that only our own work is
+ * measured: cache lookups, single flight, truncation, and metrics. Writing the response body of a hit is measured too.
+ * On the hit path the forecast is in the cache. On the miss path nothing is ever cached, so every call truncates the
+ * recorded 14 period NWS forecast and puts it into the (no-op) cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastServiceBenchmark {
+
+    private static final String ADDRESS = "401 S 2nd St, Springfield, IL 62701";
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private ForecastService cachingService;
+    private ForecastService nonCachingService;
+    private ForecastJsonWriter jsonWriter;
+    private CacheableWeatherForecast hit;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Logging every cache hit and miss to the console would otherwise dominate the measurement.
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+
+        WeatherForecast weatherForecast;
+        try (InputStream body = Objects.requireNonNull(getClass().getResourceAsStream("/nws/forecast.json"))) {
+            weatherForecast = objectMapper.readValue(body, WeatherForecast.class);
+        }
+        Instant now = Instant.now();
+        ForecastEntry entry = new ForecastEntry(weatherForecast, now, now.plus(Duration.ofDays(1)), null, null);
+        WeatherStation.Properties gridPoint = new WeatherStation.Properties(
+                "https://api.weather.gov/gridpoints/ILX/63,39/forecast", "ILX", 63, 39);
+
+        ForecastMetrics metrics = new ForecastMetrics(new SimpleMeterRegistry());
+        AddressRecord addressRecord = new AddressRecord("39.8017093", "-89.6497406", ADDRESS, null);
+        LocationService locationService = new LocationService(restClientBuilder(), null, new UpstreamProperties(),
+                mock(UpstreamRequestFactories.class), metrics) {
+            @Override
+            AddressRecord retrieveLongitudeAndLatitude(String param) {
+                return addressRecord;
+            }
+        };
+        WeatherService weatherService = new WeatherService(restClientBuilder(), null, new CacheProperties(),
+                new UpstreamProperties(), mock(UpstreamRequestFactories.class),
+                new ForecastStreamParser(objectMapper), metrics) {
+            @Override
+            WeatherStation.Properties resolveGridPoint(String lat, String lon) {
+                return gridPoint;
+            }
+
+            @Override
+            ForecastEntry retrieveForecastData(WeatherStation.Properties gridPoint, ForecastEntry previous) {
+                return entry;
+            }
+        };
+
+        jsonWriter = new ForecastJsonWriter(objectMapper);
+        PopularityTracker popularity = new PopularityTracker(new CacheProperties());
+        PeerService peers = new PeerService(restClientBuilder(), new ClusterProperties(),
+                mock(UpstreamRequestFactories.class), metrics);
+        cachingService = new ForecastService(locationService, weatherService, new CaffeineCacheManager(),
+                new CacheProperties(), metrics, jsonWriter, popularity, peers);
+        cachingService.getForecast(ADDRESS); // Fills the cache.
+        nonCachingService = new ForecastService(locationService, weatherService, new NoOpCacheManager(),
+                new CacheProperties(), metrics, jsonWriter, popularity, peers);
+        hit = cachingService.getForecast(ADDRESS);
+    }
+
+    // Services are stubbed by overriding them, rather than with Mockito, whose bookkeeping on every invocation costs
+    // more than the code being measured. Mockito only supplies what the constructors need.
+    private static RestClient.Builder restClientBuilder() {
+        RestClient.Builder builder = mock(RestClient.Builder.class);
+        when(builder.baseUrl(anyString())).thenReturn(builder);
+        when(builder.requestFactory(any())).thenReturn(builder);
+        when(builder.build()).thenReturn(mock(RestClient.class));
+        return builder;
+    }
+
+    @Benchmark
+    public CacheableWeatherForecast cacheHit() {
+        return cachingService.getForecast(ADDRESS);
+    }
+
+    @Benchmark
+    public CacheableWeatherForecast cacheMiss() {
+        return nonCachingService.getForecast(ADDRESS);
+    }
+
+    // Writing the response body of a cache hit from the cached, serialized forecast.
+    @Benchmark
+    public byte[] writeSerializedBody() {
+        return jsonWriter.write(hit);
+    }
+
+    // Serializing the whole response of a cache hit, as before forecasts were kept serialized.
+    @Benchmark
+    public byte[] serializeBody() throws IOException {
+        return objectMapper.writeValueAsBytes(hit);
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures binding a recorded Nominatim search response (three results, with address details) into AddressRecords,
+ * as LocationService does for every geocode cache miss.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeocodeParsingBenchmark {
+
+    private final ObjectReader addressRecordsReader = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(new TypeReference<List<AddressRecord>>() {
+            });
+
+    private byte[] searchJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream body = Objects.requireNonNull(getClass().getResourceAsStream("/nominatim/search.json"))) {
+            searchJson = body.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public List<AddressRecord> bindSearchResults() throws IOException {
+        return addressRecordsReader.readValue(searchJson);
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.dierauf.apple.forecast.config;
+
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.Cache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures gets and puts on the forecast cache, configured exactly as CacheConfig configures it, from many threads at
+ * once. With as many grid points as the cache holds every get is a hit; with ten times as many most gets miss and
+ * puts evict.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastCacheBenchmark {
+
+    @Param({"100", "1000"})
+    public int gridPoints;
+
+    private Cache cache;
+    private GridPoint[] keys;
+    private ForecastEntry entry;
+
+    @Setup
+    public void setUp() {
+        CacheProperties cacheProperties = new CacheProperties();
+        cache = Objects.requireNonNull(new CacheConfig().cacheManager(cacheProperties, new ObjectMapper())
+                .getCache(CacheConfig.FORECAST_CACHE));
+        keys = new GridPoint[gridPoints];
+        for (int i = 0; i < gridPoints; i++) {
+            keys[i] = new GridPoint("ILX", i / 100, i % 100);
+        }
+        Instant now = Instant.now();
+        entry = new ForecastEntry(new WeatherForecast(new WeatherForecast.Properties(now.toString(), List.of())),
+                now, now.plus(Duration.ofDays(1)), null, null);
+        for (GridPoint key : keys) {
+            cache.put(key, entry);
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ForecastEntry get() {
+        return cache.get(randomKey(), ForecastEntry.class);
+    }
+
+    // Mostly reads, with some writes, as refreshes of expired forecasts interleave with requests.
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(6)
+    public ForecastEntry readWriteGet() {
+        return cache.get(randomKey(), ForecastEntry.class);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public void readWritePut() {
+        cache.put(randomKey(), entry);
+    }
+
+    private GridPoint randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.dierauf.apple.forecast;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Reduces a free-form address to a canonical form, so that trivially different spellings of the same address
+ * (case, whitespace, punctuation, common abbreviations) share a single geocoding cache entry.
+ * Example: "123 Main Street,  Springfield IL" and "123 main st springfield, il" both become "123 main st springfield il".
+ */
+final class AddressNormalizer {
+
+    private static final Pattern PUNCTUATION = Pattern.compile("[^\\p{L}\\p{N}#\\s]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Common USPS street suffixes, directionals, and unit designators. Long forms map to the abbreviation.
+    private static final Map<String, String> ABBREVIATIONS = Map.ofEntries(
+            Map.entry("street", "st"),
+            Map.entry("avenue", "ave"),
+            Map.entry("road", "rd"),
+            Map.entry("boulevard", "blvd"),
+            Map.entry("drive", "dr"),
+            Map.entry("lane", "ln"),
+            Map.entry("court", "ct"),
+            Map.entry("place", "pl"),
+            Map.entry("terrace", "ter"),
+            Map.entry("highway", "hwy"),
+            Map.entry("parkway", "pkwy"),
+            Map.entry("circle", "cir"),
+            Map.entry("square", "sq"),
+            Map.entry("north", "n"),
+            Map.entry("south", "s"),
+            Map.entry("east", "e"),
+            Map.entry("west", "w"),
+            Map.entry("northeast", "ne"),
+            Map.entry("northwest", "nw"),
+            Map.entry("southeast", "se"),
+            Map.entry("southwest", "sw"),
+            Map.entry("apartment", "apt"),
+            Map.entry("suite", "ste")
+    );
+
+    private AddressNormalizer() {
+    }
+
+    static String normalize(String address) {
+        if (StringUtils.isBlank(address)) {
+            return "";
+        }
+        String lowerCase = address.toLowerCase(Locale.ROOT);
+        String withoutPunctuation = PUNCTUATION.matcher(lowerCase).replaceAll(" ");
+        return Arrays.stream(WHITESPACE.split(withoutPunctuation.strip()))
+                .map(token -> ABBREVIATIONS.getOrDefault(token, token))
+                .collect(Collectors.joining(" "));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.BatchForecastResult;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Service to retrieve weather forecasts for many addresses in one call.
+ * Duplicate addresses are looked up once, cache hits are answered immediately, and cache misses are fanned out on
+ * virtual threads. The number of concurrent calls to each upstream service is bounded by its UpstreamGuard, so the
+ * wall-clock time of a batch is bounded by parallel upstream latency rather than the sum of it. Each miss is admitted
+ * under the same ConcurrencyLimiter as a miss of /forecast, and a miss beyond the limit fails on its own.
+ */
+@Service
+@AllArgsConstructor
+@Slf4j
+class BatchForecastService {
+
+    private final ForecastService forecastService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    List<BatchForecastResult> getForecasts(List<String> addresses) {
+        // One lookup per normalized address, in order of first appearance.
+        Map<String, String> uniqueAddresses = new LinkedHashMap<>();
+        addresses.forEach(address -> uniqueAddresses.putIfAbsent(AddressNormalizer.normalize(address), address));
+
+        Map<String, BatchForecastResult> results = new LinkedHashMap<>();
+        Map<String, Future<BatchForecastResult>> pending = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            uniqueAddresses.forEach((key, address) -> {
+                if (StringUtils.isBlank(address)) {
+                    results.put(key, BatchForecastResult.failure(address, "Address cannot be empty"));
+                    return;
+                }
+                ForecastService.CacheLookup lookup = forecastService.lookUp(address);
+                if (lookup.forecast() != null) {
+                    results.put(key, BatchForecastResult.success(address, lookup.forecast()));
+                } else {
+                    pending.put(key, executor.submit(() -> retrieveForecast(lookup)));
+                }
+            });
+            log.info("Batch of {} addresses: {} unique, {} from cache, {} to retrieve",
+                    addresses.size(), uniqueAddresses.size(), results.size(), pending.size());
+            pending.forEach((key, future) -> results.put(key, await(uniqueAddresses.get(key), future)));
+        }
+        return addresses.stream()
+                .map(address -> withAddress(address, results.get(AddressNormalizer.normalize(address))))
+                .toList();
+    }
+
+    private BatchForecastResult retrieveForecast(ForecastService.CacheLookup lookup) {
+        String address = lookup.address();
+        try {
+            return BatchForecastResult.success(address,
+                    concurrencyLimiter.execute(() -> forecastService.retrieve(lookup)));
+        } catch (UpstreamBusyException e) {
+            log.warn("Unable to retrieve forecast for address: {}: {}", address, e.getMessage());
+            return BatchForecastResult.failure(address, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Unable to retrieve forecast for address: {}", address, e);
+            return BatchForecastResult.failure(address, errorOf(e));
+        }
+    }
+
+    private static BatchForecastResult await(String address, Future<BatchForecastResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrieving forecast for: " + address, e);
+        } catch (ExecutionException e) {
+            return BatchForecastResult.failure(address, errorOf(e.getCause()));
+        }
+    }
+
+    // A result has either a forecast or an error, so an exception without a message is reported by its type.
+    private static String errorOf(Throwable e) {
+        return Objects.requireNonNullElse(e.getMessage(), e.getClass().getSimpleName());
+    }
+
+    // Duplicates share a result, but each one is reported with the address exactly as it was requested.
+    private static BatchForecastResult withAddress(String address, BatchForecastResult result) {
+        return new BatchForecastResult(address, result.forecast(), result.error());
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most popular forecasts warm. At startup, loads the forecasts of the configured seed addresses. Then, every
+ * interval, refreshes the most requested forecasts that would otherwise expire, or be due for refresh, before the next
+ * interval, so that their requests are always cache hits.
+ * Pre-warming stays within its own budget of upstream calls, on top of the limits every upstream call is subject to.
+ */
+@Component
+@Slf4j
+class CachePrewarmer implements DisposableBean {
+
+    private final ForecastService forecastService;
+    private final PopularityTracker popularity;
+    private final CacheProperties.Prewarm settings;
+    private final ForecastMetrics metrics;
+    private final TokenBucket budget;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("cache-prewarmer").daemon().factory());
+
+    CachePrewarmer(ForecastService forecastService, PopularityTracker popularity, CacheProperties cacheProperties,
+                   ForecastMetrics metrics) {
+        this.forecastService = forecastService;
+        this.popularity = popularity;
+        this.settings = cacheProperties.getPrewarm();
+        this.metrics = metrics;
+        this.budget = new TokenBucket(settings.getRate(), 1, System.nanoTime());
+    }
+
+    // Started once the application is ready, so that seeding does not delay startup.
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        scheduler.execute(this::seed);
+        long interval = settings.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::refreshMostPopular, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void seed() {
+        for (String address : settings.getSeedAddresses()) {
+            if (!awaitBudget()) {
+                return;
+            }
+            try {
+                forecastService.preload(address);
+                metrics.countPrewarm("seed", "success");
+            } catch (RuntimeException e) {
+                log.warn("Unable to pre-load forecast for seed address: {}", address, e);
+                metrics.countPrewarm("seed", "error");
+            }
+        }
+    }
+
+    private void refreshMostPopular() {
+        Duration lead = settings.getInterval();
+        int refreshed = 0;
+        for (WeatherStation.Properties gridPoint : popularity.mostPopular()) {
+            // The budget is only spent on forecasts that need a refresh.
+            if (!forecastService.needsRefresh(gridPoint, lead)) {
+                continue;
+            }
+            if (!awaitBudget()) {
+                return;
+            }
+            try {
+                forecastService.refresh(gridPoint, lead);
+                metrics.countPrewarm("refresh", "success");
+                refreshed++;
+            } catch (RuntimeException e) {
+                // E.g. NWS is failing or busy. The forecast is refreshed on its next request, or next interval.
+                log.warn("Unable to pre-warm forecast for grid point: {}", gridPoint.gridPoint(), e);
+                metrics.countPrewarm("refresh", "error");
+            }
+        }
+        if (refreshed > 0) {
+            log.info("Pre-warmed {} popular forecasts", refreshed);
+        }
+    }
+
+    // Waits for the next call allowed by the budget. False if interrupted, i.e. shutting down.
+    private boolean awaitBudget() {
+        try {
+            Thread.sleep(Duration.ofNanos(budget.reserve(System.nanoTime(), Long.MAX_VALUE)));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.dierauf.apple.forecast;
+
+/**
+ * Circuit breaker over the outcomes of the most recent calls to an upstream service. Once the window of recent calls
+ * is full and the share of failures in it reaches the threshold, the breaker opens, and calls are turned away without
+ * being made. After the open duration, a single trial call is let through (half open): if it succeeds, the breaker
+ * closes again, otherwise it stays open for another open duration.
+ */
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean[] failures;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    // Ring buffer of the outcomes of the most recent calls, while closed.
+    private int next;
+    private int recorded;
+    private int failed;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    /**
+     * @param windowSize           Number of most recent calls the failure rate is taken over. At least 1.
+     * @param failureRateThreshold Share of failed calls, between 0 and 1, at which the breaker opens.
+     * @param openNanos            Time the breaker stays open before letting a trial call through.
+     */
+    CircuitBreaker(int windowSize, double failureRateThreshold, long openNanos) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1: " + windowSize);
+        }
+        this.failures = new boolean[windowSize];
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * Whether a call may be made now. Every permitted call must be followed by onSuccess or onFailure, or by onIgnored
+     * if its outcome says nothing about the health of the upstream.
+     *
+     * @param now Current time, from System.nanoTime().
+     */
+    synchronized boolean tryAcquire(long now) {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (now - openUntil < 0) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                yield true;
+            }
+            case HALF_OPEN -> {
+                if (trialInFlight) {
+                    yield false;
+                }
+                trialInFlight = true;
+                yield true;
+            }
+        };
+    }
+
+    synchronized void onSuccess(long now) {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false, now);
+        }
+    }
+
+    synchronized void onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            open(now);
+        } else if (state == State.CLOSED) {
+            record(true, now);
+        }
+    }
+
+    // E.g. a call that was cancelled, or rejected by the upstream as invalid.
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false; // Let the next caller make the trial call.
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    // Nanoseconds until a trial call will be let through, e.g. for a Retry-After header. 0 unless open.
+    synchronized long remainingOpen(long now) {
+        return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+    }
+
+    private void record(boolean failure, long now) {
+        if (recorded == failures.length) {
+            failed -= failures[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failures[next] = failure;
+        failed += failure ? 1 : 0;
+        next = (next + 1) % failures.length;
+        if (recorded == failures.length && failed >= failureRateThreshold * failures.length) {
+            open(now);
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openUntil = now + openNanos;
+        trialInFlight = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        next = 0;
+        recorded = 0;
+        failed = 0;
+        trialInFlight = false;
+    }
+
+}
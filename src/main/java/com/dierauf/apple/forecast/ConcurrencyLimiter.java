@@ -0,0 +1,93 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit on the number of forecast requests that wait on upstream services at once. Requests beyond the limit
+ * are turned away immediately with UpstreamBusyException, rather than adding to the wait of every request in flight.
+ * The limit is found by AIMD (additive increase, multiplicative decrease): it grows by one while requests complete
+ * within the latency threshold and use at least half of it, and shrinks by the backoff ratio when a request is slower,
+ * times out, or is turned away by an upstream limit. It shrinks at most once per round trip: requests that started
+ * before the last decrease were admitted under the old limit, so their congestion has already been accounted for.
+ * So the number of requests in flight tracks what the upstream services can currently answer in time, and throughput
+ * stays at its peak under overload.
+ */
+@Component
+class ConcurrencyLimiter {
+
+    private final UpstreamProperties.AdaptiveLimit settings;
+    private final ForecastMetrics metrics;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    // System.nanoTime() of the last decrease.
+    private long decreasedAt;
+
+    ConcurrencyLimiter(UpstreamProperties upstreamProperties, ForecastMetrics metrics) {
+        this.settings = upstreamProperties.getAdaptiveLimit();
+        this.metrics = metrics;
+        this.limit = settings.getInitialLimit();
+        this.decreasedAt = System.nanoTime();
+        metrics.registerConcurrencyLimit(() -> (int) limit, inFlight::get);
+    }
+
+    <T> T execute(Supplier<T> request) {
+        if (!settings.isEnabled()) {
+            return request.get();
+        }
+        if (!tryAcquire()) {
+            metrics.countShed();
+            throw new UpstreamBusyException("Too many forecasts are being retrieved, try again later",
+                    settings.getRetryAfter());
+        }
+        long start = System.nanoTime();
+        Boolean congested = null; // Unknown, e.g. for an address that could not be found.
+        try {
+            T result = request.get();
+            congested = System.nanoTime() - start > settings.getLatencyThreshold().toNanos();
+            return result;
+        } catch (UpstreamBusyException | ResourceAccessException e) {
+            congested = true; // Turned away by an upstream limit, or timed out.
+            throw e;
+        } finally {
+            if (congested != null) {
+                adjust(start, congested);
+            }
+            inFlight.decrementAndGet();
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // The limit only grows while it is used, so that it does not drift far above what was ever tested.
+    private synchronized void adjust(long start, boolean congested) {
+        if (congested) {
+            // Otherwise N requests slowed down together would shrink the limit N times over.
+            if (start - decreasedAt >= 0) {
+                limit = Math.max(settings.getMinLimit(), limit * settings.getBackoffRatio());
+                decreasedAt = System.nanoTime();
+            }
+        } else if (inFlight.get() * 2 >= limit) {
+            limit = Math.min(settings.getMaxLimit(), limit + 1);
+        }
+    }
+
+}
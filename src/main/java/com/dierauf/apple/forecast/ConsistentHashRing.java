@@ -0,0 +1,54 @@
+package com.dierauf.apple.forecast;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns each key to one of a set of nodes by consistent hashing. Every node is placed on a ring at a number of
+ * points (virtual nodes), and a key is owned by the first node at or after the key's own point. Adding or removing a
+ * node only moves the keys between it and its neighbours on the ring, about 1/n of them, rather than reassigning most
+ * keys as hashing modulo n would.
+ * Nodes and keys are hashed with MD5, so that every instance given the same nodes assigns keys the same way.
+ */
+final class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     * @param nodes        Nodes to assign keys to. At least one.
+     * @param virtualNodes Points on the ring per node. At least 1.
+     */
+    ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("At least one node, at at least one point, is needed: %s, %d"
+                    .formatted(nodes, virtualNodes));
+        }
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On the rare collision, the node sorting first keeps the point, whichever order nodes are given in.
+                ring.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    String ownerOf(String key) {
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(key));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue(); // Wrap around the ring.
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JDK provides MD5.
+        }
+    }
+
+}
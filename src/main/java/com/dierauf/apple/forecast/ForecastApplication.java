@@ -1,17 +1,21 @@
 package com.dierauf.apple.forecast;
 
+import com.dierauf.apple.forecast.config.ClusterProperties;
+import com.dierauf.apple.forecast.config.StreamProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
 
 /**
  * Main application class for the Apple Forecast Application.
- * This application provides weather forecasts based on zip codes.
+ * This application provides weather forecasts based on street addresses.
  * Caching is enabled to store recent forecasts and reduce external API calls.
  */
 
 @SpringBootApplication(scanBasePackages = "com.dierauf.apple.forecast")
-@EnableCaching // Allows for caching of weather forecasts based on zipcode. Using Caffeine as the cache provider.
+@EnableCaching // Allows for caching of weather forecasts based on NWS grid point. Using Caffeine as the cache provider.
+@EnableConfigurationProperties({StreamProperties.class, ClusterProperties.class})
 // Use minimum access level necessary. Package-private for now. Reduces surface area for attack.
 public class ForecastApplication {
 
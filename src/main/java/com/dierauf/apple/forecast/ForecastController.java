@@ -1,13 +1,23 @@
 package com.dierauf.apple.forecast;
 
+import com.dierauf.apple.forecast.dto.BatchForecastResult;
 import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
 import io.micrometer.common.util.StringUtils;
 import lombok.AllArgsConstructor;
 import org.springframework.context.annotation.Description;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
 
 /**
  * REST controller for retrieving weather forecast requests.
@@ -16,18 +26,65 @@ import org.springframework.web.bind.annotation.RestController;
 @AllArgsConstructor // Reduce boilerplate "noise" for constructor injection.
 class ForecastController {
 
+    public static final int MAX_BATCH_SIZE = 5_000;
+
     private final ForecastService forecastService;
+    private final BatchForecastService batchForecastService;
+    private final ForecastStreamService forecastStreamService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ForecastMetrics metrics;
+    private final ForecastJsonWriter jsonWriter;
 
     @Description("""
             The endpoint returns a weather forecast based on the given address.
             Example: "123 Main St, Springfield, IL 62704".
             Returns a JSON object containing the weather forecast and a flag indicating if the data was retrieved from cache.
             """)
-    @GetMapping("/forecast")
-    ResponseEntity<CacheableWeatherForecast> getForecast(@RequestParam(name = "address") String address) {
+    // The body is written from the cached, already serialized forecast. Clients polling with If-None-Match are
+    // answered with 304 Not Modified, without a body, for as long as the forecast has not changed.
+    @GetMapping(value = "/forecast", produces = MediaType.APPLICATION_JSON_VALUE)
+    ResponseEntity<byte[]> getForecast(@RequestParam(name = "address") String address, WebRequest request) {
+        validate(address);
+        return metrics.timeRequest("forecast", () -> {
+            // Cache hits are always answered. Only requests that wait on upstream services count against the limit,
+            // and continue from the cache lookup rather than repeating it.
+            ForecastService.CacheLookup lookup = forecastService.lookUp(address);
+            CacheableWeatherForecast forecast = lookup.forecast() != null
+                    ? lookup.forecast()
+                    : concurrencyLimiter.execute(() -> forecastService.retrieve(lookup));
+            String etag = jsonWriter.etag(forecast);
+            if (request.checkNotModified(etag)) {
+                return null; // 304 Not Modified, with the ETag, has been sent.
+            }
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache()) // Browsers must revalidate, rather than reuse, the body.
+                    .body(jsonWriter.write(forecast));
+        });
+    }
+
+    @Description("""
+            The endpoint streams weather forecasts for the given address, as Server-Sent Events.
+            Sends a "forecast" event with the same JSON object as /forecast at once, and again whenever NWS issues a
+            new forecast. Streams are closed after a while, and clients (e.g. a browser EventSource) reconnect.
+            """)
+    // Only subscribing is timed. The stream is then answered asynchronously, without holding a request thread.
+    @GetMapping(value = "/forecast/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamForecast(@RequestParam(name = "address") String address) {
         validate(address);
-        CacheableWeatherForecast forecast = forecastService.getForecast(address);
-        return ResponseEntity.ok(forecast);
+        return metrics.timeRequest("forecast-stream", () -> forecastStreamService.subscribe(address));
+    }
+
+    @Description("""
+            The endpoint returns weather forecasts for a JSON array of addresses.
+            Example: ["123 Main St, Springfield, IL 62704", "1 Apple Park Way, Cupertino, CA"].
+            Returns a JSON array with one result per address, in request order. Each result contains either the
+            forecast or the error for that address, so one failing address does not fail the batch.
+            """)
+    @PostMapping("/forecasts")
+    ResponseEntity<List<BatchForecastResult>> getForecasts(@RequestBody List<String> addresses) {
+        validate(addresses);
+        return ResponseEntity.ok(metrics.timeRequest("forecasts", () -> batchForecastService.getForecasts(addresses)));
     }
 
     private void validate(String address) {
@@ -37,4 +94,14 @@ class ForecastController {
         }
     }
 
+    private void validate(List<String> addresses) {
+        // Blank addresses are reported per address, so only the batch itself is validated here.
+        if (CollectionUtils.isEmpty(addresses)) {
+            throw new IllegalArgumentException("Addresses cannot be empty");
+        }
+        if (addresses.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("No more than %d addresses per request".formatted(MAX_BATCH_SIZE));
+        }
+    }
+
 }
@@ -0,0 +1,75 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Determines until when a forecast retrieved from NWS is fresh.
+ * In order of preference: Cache-Control max-age, the Expires header, the forecast's updateTime plus the NWS publication
+ * interval, and finally the configured forecast time to live. The result is clamped to the configured bounds.
+ */
+final class ForecastFreshness {
+
+    // NWS publishes a new forecast for a grid point roughly every hour.
+    static final Duration NWS_UPDATE_INTERVAL = Duration.ofHours(1);
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])max-age=(\\d+)");
+
+    private final CacheProperties cacheProperties;
+
+    ForecastFreshness(CacheProperties cacheProperties) {
+        this.cacheProperties = cacheProperties;
+    }
+
+    Instant expiresAt(HttpHeaders headers, WeatherForecast weatherForecast, Instant fetchedAt) {
+        Instant advertised = fromCacheControl(headers, fetchedAt)
+                .or(() -> fromExpires(headers))
+                .or(() -> fromUpdateTime(weatherForecast, fetchedAt))
+                .orElse(fetchedAt.plus(cacheProperties.getForecast().getTimeToLive()));
+        CacheProperties.Freshness freshness = cacheProperties.getFreshness();
+        Instant earliest = fetchedAt.plus(freshness.getMinimumTimeToLive());
+        Instant latest = fetchedAt.plus(freshness.getMaximumTimeToLive());
+        return advertised.isBefore(earliest) ? earliest : advertised.isAfter(latest) ? latest : advertised;
+    }
+
+    private static Optional<Instant> fromCacheControl(HttpHeaders headers, Instant fetchedAt) {
+        String cacheControl = headers.getCacheControl();
+        if (StringUtils.isBlank(cacheControl)) {
+            return Optional.empty();
+        }
+        Matcher matcher = MAX_AGE.matcher(cacheControl);
+        return matcher.find()
+                ? Optional.of(fetchedAt.plusSeconds(Long.parseLong(matcher.group(1))))
+                : Optional.empty();
+    }
+
+    private static Optional<Instant> fromExpires(HttpHeaders headers) {
+        long expires = headers.getExpires();
+        return expires > 0 ? Optional.of(Instant.ofEpochMilli(expires)) : Optional.empty();
+    }
+
+    // The next forecast is expected one publication interval after the current one was issued.
+    private static Optional<Instant> fromUpdateTime(WeatherForecast weatherForecast, Instant fetchedAt) {
+        String updateTime = weatherForecast.properties().updateTime();
+        if (StringUtils.isBlank(updateTime)) {
+            return Optional.empty();
+        }
+        try {
+            Instant nextUpdate = OffsetDateTime.parse(updateTime).toInstant().plus(NWS_UPDATE_INTERVAL);
+            return nextUpdate.isAfter(fetchedAt) ? Optional.of(nextUpdate) : Optional.empty();
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+}
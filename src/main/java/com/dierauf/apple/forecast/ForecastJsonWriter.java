@@ -0,0 +1,91 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import com.dierauf.apple.forecast.dto.SerializedForecast;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Writes the JSON body of a /forecast response. The weather forecast, which is most of the body, is serialized once
+ * when it is cached, and its bytes are copied into every response. Only the location name is serialized per request.
+ * The body is identical to what Jackson writes for a CacheableWeatherForecast.
+ */
+@Component
+@AllArgsConstructor
+class ForecastJsonWriter {
+
+    private static final byte[] LOCATION_NAME = "{\"locationName\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] WEATHER_FORECAST = ",\"weatherForecast\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IS_FROM_CACHE = ",\"isFromCache\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IS_STALE = ",\"isStale\":".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper;
+
+    SerializedForecast serialize(WeatherForecast weatherForecast) {
+        return SerializedForecast.of(weatherForecast, writeValueAsBytes(weatherForecast));
+    }
+
+    byte[] write(CacheableWeatherForecast forecast) {
+        SerializedForecast serializedForecast = forecast.serializedForecast() != null
+                ? forecast.serializedForecast()
+                : serialize(forecast.weatherForecast());
+        byte[] locationName = writeValueAsBytes(forecast.locationName());
+        byte[] isFromCache = Boolean.toString(forecast.isFromCache()).getBytes(StandardCharsets.US_ASCII);
+        byte[] isStale = Boolean.toString(forecast.isStale()).getBytes(StandardCharsets.US_ASCII);
+        // The body is assembled in a single array of exactly its size.
+        ByteBuffer body = ByteBuffer.allocate(LOCATION_NAME.length + locationName.length + WEATHER_FORECAST.length
+                + serializedForecast.json().length + IS_FROM_CACHE.length + isFromCache.length + IS_STALE.length
+                + isStale.length + 1);
+        return body.put(LOCATION_NAME).put(locationName)
+                .put(WEATHER_FORECAST).put(serializedForecast.json())
+                .put(IS_FROM_CACHE).put(isFromCache)
+                .put(IS_STALE).put(isStale)
+                .put((byte) '}')
+                .array();
+    }
+
+    /**
+     * Weak ETag of the response body. isFromCache is left out, as it is a hint rather than content, so that a client
+     * revalidating a forecast it received on a cache miss is answered with 304 Not Modified.
+     * The location name is hashed together with the hash of the forecast, so that responses for different locations
+     * of a grid point are told apart as reliably as different forecasts are.
+     */
+    String etag(CacheableWeatherForecast forecast) {
+        String forecastHash = forecast.serializedForecast() != null
+                ? forecast.serializedForecast().hash()
+                : serialize(forecast.weatherForecast()).hash();
+        MessageDigest digest = sha256();
+        digest.update(forecastHash.getBytes(StandardCharsets.US_ASCII));
+        // As written in the body, so that a missing name is not mistaken for the name "null".
+        digest.update(writeValueAsBytes(forecast.locationName()));
+        // 128 bits, as for the forecast alone.
+        return "W/\"%s%s\"".formatted(HexFormat.of().formatHex(digest.digest(), 0, 16),
+                forecast.isStale() ? "-stale" : "");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JDK provides SHA-256.
+        }
+    }
+
+    private byte[] writeValueAsBytes(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize forecast", e);
+        }
+    }
+
+}
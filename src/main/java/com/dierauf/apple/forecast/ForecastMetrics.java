@@ -0,0 +1,184 @@
+package com.dierauf.apple.forecast;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Timers and counters for every stage of the forecast pipeline, so that time can be attributed to this service or to
+ * an upstream service. Exported through the actuator metrics and Prometheus endpoints.
+ * Cache size, evictions, hits, and misses are exported per cache by CacheConfig.
+ */
+@Component
+@AllArgsConstructor
+class ForecastMetrics {
+
+    private final MeterRegistry registry;
+
+    // End to end time of a request to one of our endpoints.
+    <T> T timeRequest(String endpoint, Supplier<T> request) {
+        return time(Timer.builder("forecast.requests")
+                .description("Time to answer a forecast request")
+                .tag("endpoint", endpoint), request);
+    }
+
+    // Time of a single call to an upstream service, excluding time spent waiting to be allowed to call it.
+    <T> T timeUpstream(String upstream, String operation, Supplier<T> call) {
+        return time(Timer.builder("forecast.upstream.requests")
+                .description("Time of calls to upstream services")
+                .tag("upstream", upstream)
+                .tag("operation", operation), call);
+    }
+
+    // Time spent waiting for the rate limit of, and a free slot to call, an upstream service.
+    void recordLimiterWait(String upstream, Duration duration) {
+        Timer.builder("forecast.upstream.limiter.wait")
+                .description("Time waiting to be allowed to call upstream services")
+                .tag("upstream", upstream)
+                .register(registry)
+                .record(duration);
+    }
+
+    void countLimiterRejection(String upstream, String reason) {
+        Counter.builder("forecast.upstream.limiter.rejections")
+                .description("Calls to upstream services turned away, as they could not be made in time or the circuit "
+                        + "breaker was open")
+                .tag("upstream", upstream)
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    // One gauge per state, of value 1 for the current state of the breaker and 0 for the others.
+    void registerCircuitBreaker(String upstream, CircuitBreaker circuitBreaker) {
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("forecast.upstream.circuit.state", circuitBreaker,
+                            breaker -> breaker.state() == state ? 1 : 0)
+                    .description("State of the circuit breaker of upstream services")
+                    .tag("upstream", upstream)
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+
+    // Which call answered first, of a call and its hedge. The hedge win rate is the share of hedge among both.
+    void countHedge(String upstream, String operation, String winner) {
+        Counter.builder("forecast.upstream.hedges")
+                .description("Calls to upstream services sent a second time, by which of the two answered first")
+                .tag("upstream", upstream)
+                .tag("operation", operation)
+                .tag("winner", winner)
+                .register(registry)
+                .increment();
+    }
+
+    <T> T timeCacheLookup(String cache, Supplier<T> lookup) {
+        Timer.Sample sample = Timer.start(registry);
+        T value = lookup.get();
+        sample.stop(Timer.builder("forecast.cache.lookups")
+                .description("Time of cache lookups")
+                .tag("cache", cache)
+                .tag("result", value != null ? "hit" : "miss")
+                .register(registry));
+        return value;
+    }
+
+    void timeCachePut(String cache, Runnable put) {
+        Timer.builder("forecast.cache.puts")
+                .description("Time of cache puts")
+                .tag("cache", cache)
+                .register(registry)
+                .record(put);
+    }
+
+    void recordDecode(String document, Duration duration) {
+        Timer.builder("forecast.json.decode")
+                .description("Time to decode upstream JSON documents")
+                .tag("document", document)
+                .register(registry)
+                .record(duration);
+    }
+
+    void countStaleServed() {
+        Counter.builder("forecast.cache.stale")
+                .description("Expired forecasts served while a newer forecast is retrieved")
+                .register(registry)
+                .increment();
+    }
+
+    void countBackgroundRefresh(String outcome) {
+        Counter.builder("forecast.cache.refreshes")
+                .description("Forecasts refreshed in the background")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    // Forecasts loaded ahead of requests: seeded at startup, or refreshed as they are among the most popular.
+    void countPrewarm(String type, String outcome) {
+        Counter.builder("forecast.cache.prewarms")
+                .description("Forecasts loaded into the cache ahead of requests")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    void registerConcurrencyLimit(Supplier<Number> limit, Supplier<Number> inFlight) {
+        Gauge.builder("forecast.requests.limit", limit)
+                .description("Adaptive limit on forecast requests waiting on upstream services")
+                .register(registry);
+        Gauge.builder("forecast.requests.in.flight", inFlight)
+                .description("Forecast requests waiting on upstream services")
+                .register(registry);
+    }
+
+    void countShed() {
+        Counter.builder("forecast.requests.shed")
+                .description("Forecast requests turned away, as the adaptive concurrency limit was reached")
+                .register(registry)
+                .increment();
+    }
+
+    void registerStreams(Supplier<Number> subscribers, Supplier<Number> gridPoints) {
+        Gauge.builder("forecast.stream.subscribers", subscribers)
+                .description("Open forecast streams")
+                .register(registry);
+        Gauge.builder("forecast.stream.grid.points", gridPoints)
+                .description("Grid points polled for open forecast streams")
+                .register(registry);
+    }
+
+    // Forecasts retrieved from the instance owning their grid point. On error, NWS was called instead.
+    void countPeerFetch(String outcome) {
+        Counter.builder("forecast.cluster.peer.fetches")
+                .description("Forecasts retrieved from the cluster instance owning their grid point")
+                .tag("outcome", outcome)
+                .register(registry)
+                .increment();
+    }
+
+    private <T> T time(Timer.Builder builder, Supplier<T> call) {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return call.get();
+        } catch (RuntimeException | Error e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(builder
+                    .tag("outcome", "none".equals(exception) ? "success" : "error")
+                    .tag("exception", exception)
+                    .register(registry));
+        }
+    }
+
+}
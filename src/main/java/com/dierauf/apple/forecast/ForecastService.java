@@ -1,20 +1,35 @@
 package com.dierauf.apple.forecast;
 
+import com.dierauf.apple.forecast.config.CacheConfig;
+import com.dierauf.apple.forecast.config.CacheProperties;
 import com.dierauf.apple.forecast.dto.AddressRecord;
 import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
 import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.dierauf.apple.forecast.dto.WeatherStation;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Service to retrieve weather forecast information based upon a provided address.
- * Caches results for 30 minutes to avoid excessive calls to external services.
+ * Caches results per NWS grid point, until NWS advertises they expire, to avoid excessive calls to external services.
+ * Entries close to or past their expiry are served while being refreshed in the background (stale-while-revalidate).
+ * Requests are counted per grid point, so that the most popular forecasts can be refreshed ahead of time.
+ * In a cluster, forecasts missing from the cache are retrieved from the instance owning their grid point, if another.
  * Uses two services:
  * 1. OpenStreetMap (OSM) to translate address to longitude and latitude.
  * 2. National Weather Service (NWS) to retrieve forecast based upon longitude and latitude.
@@ -22,40 +37,218 @@ import java.util.Objects;
 @Service
 @AllArgsConstructor
 @Slf4j
-class ForecastService {
+class ForecastService implements DisposableBean {
 
     public static final int MAX_PERIODS = 3;
 
     private final LocationService locationService;
     private final WeatherService weatherService;
     private final CacheManager cacheManager;
+    private final CacheProperties cacheProperties;
+    private final ForecastMetrics metrics;
+    private final ForecastJsonWriter jsonWriter;
+    private final PopularityTracker popularity;
+    private final PeerService peers;
+    private final SingleFlight<GridPoint, ForecastEntry> inFlightForecasts = new SingleFlight<>();
+    private final Set<GridPoint> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refreshExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     CacheableWeatherForecast getForecast(String address) {
         AddressRecord addressRecord = retrieveLongitudeAndLatitude(address);
-        return retrieveWeatherForecast(addressRecord);
+        WeatherStation.Properties gridPoint = weatherService.resolveGridPoint(addressRecord.lat(), addressRecord.lon());
+        return retrieveWeatherForecast(addressRecord, gridPoint);
+    }
+
+    /**
+     * Loads the forecast for an address into the cache, unless it is cached and not due for refresh. Used to pre-load
+     * the forecasts of seed addresses, so the request is not counted towards popularity.
+     */
+    void preload(String address) {
+        AddressRecord addressRecord = retrieveLongitudeAndLatitude(address);
+        refresh(weatherService.resolveGridPoint(addressRecord.lat(), addressRecord.lon()), Duration.ZERO);
+    }
+
+    /**
+     * Looks up the forecast for an address in the caches only, without calling any upstream service.
+     *
+     * @param address Street address.
+     * @return The lookup, with the cached forecast, or as far as it got before the geocode, grid point or forecast
+     * cache missed. Retrieving the forecast then continues from there, with retrieve.
+     */
+    CacheLookup lookUp(String address) {
+        Optional<AddressRecord> addressRecord = locationService.findInCache(address);
+        if (addressRecord.isEmpty()) {
+            return new CacheLookup(address, null, null, null);
+        }
+        Optional<WeatherStation.Properties> gridPoint = weatherService.findGridPointInCache(addressRecord.get().lat(),
+                addressRecord.get().lon());
+        if (gridPoint.isEmpty()) {
+            return new CacheLookup(address, addressRecord.get(), null, null);
+        }
+        popularity.record(gridPoint.get());
+        CacheableWeatherForecast forecast = Optional.ofNullable(getFromCache(gridPoint.get().gridPoint()))
+                .map(entry -> fromCache(addressRecord.get(), gridPoint.get(), entry))
+                .orElse(null);
+        return new CacheLookup(address, addressRecord.get(), gridPoint.get(), forecast);
+    }
+
+    /**
+     * Retrieves the forecast for an address that lookUp did not find, calling upstream services for the lookups that
+     * missed. Those lookups are not repeated, nor is the request counted towards popularity again.
+     */
+    CacheableWeatherForecast retrieve(CacheLookup lookup) {
+        if (lookup.forecast() != null) {
+            return lookup.forecast();
+        }
+        if (lookup.addressRecord() == null) {
+            AddressRecord addressRecord = locationService.retrieveMissing(lookup.address());
+            return retrieveWeatherForecast(addressRecord,
+                    weatherService.resolveGridPoint(addressRecord.lat(), addressRecord.lon()));
+        }
+        if (lookup.gridPoint() == null) {
+            return retrieveWeatherForecast(lookup.addressRecord(), weatherService.resolveMissingGridPoint(
+                    lookup.addressRecord().lat(), lookup.addressRecord().lon()));
+        }
+        return retrieveMissingForecast(lookup.addressRecord(), lookup.gridPoint());
+    }
+
+    // The cached forecast of a grid point, without calling NWS.
+    Optional<ForecastEntry> findEntryInCache(GridPoint key) {
+        return Optional.ofNullable(getFromCache(key));
+    }
+
+    /**
+     * Whether the cached forecast of a grid point is missing, or due for refresh within the given lead time.
+     */
+    boolean needsRefresh(WeatherStation.Properties gridPoint, Duration lead) {
+        ForecastEntry fromCache = cacheManager().get(gridPoint.gridPoint(), ForecastEntry.class);
+        return fromCache == null || fromCache.isDueForRefresh(Instant.now(), refreshAhead().plus(lead));
+    }
+
+    /**
+     * Retrieves the forecast of a grid point into the cache, unless it is cached and not due for refresh within the
+     * given lead time. Used to keep popular forecasts warm, so the request is not counted towards popularity.
+     */
+    void refresh(WeatherStation.Properties gridPoint, Duration lead) {
+        inFlightForecasts.execute(gridPoint.gridPoint(),
+                () -> loadIntoCache(gridPoint, refreshAhead().plus(lead), true));
+    }
+
+    // The cached forecast of a grid point, unless it is due for refresh, so that a peer can be answered without NWS.
+    Optional<ForecastEntry> findFreshEntryInCache(GridPoint key) {
+        return Optional.ofNullable(getFromCache(key))
+                .filter(entry -> !entry.isDueForRefresh(Instant.now(), refreshAhead()));
+    }
+
+    /**
+     * Retrieves the forecast of a grid point this instance owns, for another instance of the cluster. The cached
+     * forecast is returned unless it is due for refresh, in which case it is retrieved from NWS, never from a peer.
+     */
+    ForecastEntry retrieveForPeer(GridPoint key) {
+        WeatherStation.Properties gridPoint = weatherService.gridPointOf(key);
+        return inFlightForecasts.execute(key, () -> loadIntoCache(gridPoint, refreshAhead(), false));
     }
 
     private AddressRecord retrieveLongitudeAndLatitude(String address) {
-        // Call for each request to obtain address details, including longitude, latitude, and zipcode.
+        // Address details, including longitude and latitude. Cached by LocationService.
         return locationService.retrieveLongitudeAndLatitude(address);
     }
 
-    private CacheableWeatherForecast retrieveWeatherForecast(AddressRecord addressRecord) {
-        String postcode = addressRecord.address().postcode();
-        CacheableWeatherForecast fromCache = getFromCache(postcode);
+    // Forecasts are cached per NWS grid point, so every address within the same grid square shares one entry.
+    // The location name is applied per request.
+    CacheableWeatherForecast retrieveWeatherForecast(AddressRecord addressRecord,
+                                                     WeatherStation.Properties gridPoint) {
+        GridPoint key = gridPoint.gridPoint();
+        popularity.record(gridPoint);
+        ForecastEntry fromCache = getFromCache(key);
         if (fromCache != null) {
-            log.info("Cache hit for postcode: {}", postcode);
+            log.info("Cache hit for grid point: {}", key);
+            return fromCache(addressRecord, gridPoint, fromCache);
+        }
+        return retrieveMissingForecast(addressRecord, gridPoint);
+    }
+
+    private CacheableWeatherForecast retrieveMissingForecast(AddressRecord addressRecord,
+                                                             WeatherStation.Properties gridPoint) {
+        GridPoint key = gridPoint.gridPoint();
+        log.info("Cache miss for grid point: {}", key);
+        // Concurrent misses for the same grid point share a single call to NWS.
+        ForecastEntry entry = inFlightForecasts.execute(key, () -> loadIntoCache(gridPoint, refreshAhead(), true));
+        return CacheableWeatherForecast.of(addressRecord.displayName(), entry, false, false);
+    }
+
+    // Entries close to, or past, their expiry are still served, while a newer forecast is retrieved in the background.
+    private CacheableWeatherForecast fromCache(AddressRecord addressRecord, WeatherStation.Properties gridPoint,
+                                               ForecastEntry entry) {
+        Instant now = Instant.now();
+        boolean isDueForRefresh = entry.isDueForRefresh(now, refreshAhead());
+        if (isDueForRefresh) {
+            refreshInBackground(gridPoint);
+        }
+        boolean isStale = entry.isExpired(now);
+        if (isStale) {
+            metrics.countStaleServed();
+        }
+        if (entry.serializedForecast() == null) {
+            // Entries read from disk are serialized again on their first hit, and put back serialized, unless the
+            // refresh is about to replace them anyway.
+            entry = serialized(entry);
+            if (!isDueForRefresh) {
+                putIntoCache(gridPoint.gridPoint(), entry);
+            }
+        }
+        return CacheableWeatherForecast.of(addressRecord.displayName(), entry, true, isStale);
+    }
+
+    private void refreshInBackground(WeatherStation.Properties gridPoint) {
+        GridPoint key = gridPoint.gridPoint();
+        if (!refreshing.add(key)) {
+            return; // Already being refreshed.
+        }
+        log.info("Refreshing forecast in background for grid point: {}", key);
+        refreshExecutor.execute(() -> {
+            try {
+                inFlightForecasts.execute(key, () -> loadIntoCache(gridPoint, refreshAhead(), true));
+                metrics.countBackgroundRefresh("success");
+            } catch (RuntimeException e) {
+                // The current entry continues to be served until it is evicted.
+                log.warn("Unable to refresh forecast for grid point: {}", key, e);
+                metrics.countBackgroundRefresh("error");
+            } finally {
+                refreshing.remove(key);
+            }
+        });
+    }
+
+    private ForecastEntry loadIntoCache(WeatherStation.Properties gridPoint, Duration refreshAhead, boolean viaOwner) {
+        GridPoint key = gridPoint.gridPoint();
+        // Another flight may have filled the cache between our cache lookup and this flight starting. Not counted as a
+        // lookup, as the request has already been counted as a miss.
+        ForecastEntry fromCache = cacheManager().get(key, ForecastEntry.class);
+        if (fromCache != null && !fromCache.isDueForRefresh(Instant.now(), refreshAhead)) {
             return fromCache;
         }
-        log.info("Cache miss for postcode: {}", postcode);
-        WeatherForecast weatherForecast = weatherService.retrieveWeatherForecast(addressRecord.lat(), addressRecord.lon());
-        WeatherForecast truncatedForecast = truncatedForecast(weatherForecast);
-        putIntoCache(postcode, truncatedForecast, addressRecord);
-        return new CacheableWeatherForecast(addressRecord.displayName(), truncatedForecast, false);
+        // Only the owner of the grid point calls NWS for it, and so revalidates it. Other instances cache the forecast
+        // of the owner until it expires. The current entry, fresh or not, allows NWS to answer with 304 Not Modified.
+        ForecastEntry entry = (viaOwner ? peers.retrieveFromOwner(key) : Optional.<ForecastEntry>empty())
+                .orElseGet(() -> weatherService.retrieveForecastData(gridPoint, fromCache));
+        ForecastEntry truncatedEntry = entry.serializedForecast() != null
+                ? entry // Not modified, and so already truncated and serialized.
+                : serialized(entry.withWeatherForecast(truncatedForecast(entry.weatherForecast())));
+        putIntoCache(key, truncatedEntry);
+        return truncatedEntry;
+    }
+
+    private Duration refreshAhead() {
+        return cacheProperties.getFreshness().getRefreshAhead();
+    }
+
+    private ForecastEntry serialized(ForecastEntry entry) {
+        return entry.withSerializedForecast(jsonWriter.serialize(entry.weatherForecast()));
     }
 
     // No need to send the entire forecast data. Just send the first few periods.
-    private WeatherForecast truncatedForecast(WeatherForecast weatherForecast) {
+    static WeatherForecast truncatedForecast(WeatherForecast weatherForecast) {
         WeatherForecast.Properties properties = weatherForecast.properties();
         if (properties.periods().size() <= MAX_PERIODS) {
             return weatherForecast;
@@ -68,22 +261,30 @@ class ForecastService {
         );
     }
 
-    private void putIntoCache(String postcode, WeatherForecast weatherForecast, AddressRecord addressRecord) {
-        if (StringUtils.isBlank(postcode)) {
-            return;
-        }
-        cacheManager().put(postcode, new CacheableWeatherForecast(addressRecord.displayName(), weatherForecast, true));
+    private void putIntoCache(GridPoint key, ForecastEntry entry) {
+        metrics.timeCachePut(CacheConfig.FORECAST_CACHE, () -> cacheManager().put(key, entry));
     }
 
-    private CacheableWeatherForecast getFromCache(String postcode) {
-        if (StringUtils.isBlank(postcode)) {
-            return null;
-        }
-        return cacheManager().get(postcode, CacheableWeatherForecast.class);
+    private ForecastEntry getFromCache(GridPoint key) {
+        return metrics.timeCacheLookup(CacheConfig.FORECAST_CACHE, () -> cacheManager().get(key, ForecastEntry.class));
     }
 
     private Cache cacheManager() {
-        return Objects.requireNonNull(cacheManager.getCache("cacheManager"));
+        return Objects.requireNonNull(cacheManager.getCache(CacheConfig.FORECAST_CACHE));
+    }
+
+    // Background refreshes still waiting for NWS are interrupted. The entries they were to replace stay cached.
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * What the caches hold for an address. The address record and grid point are null from the first cache that
+     * missed, and the forecast is null unless every cache hit.
+     */
+    record CacheLookup(String address, AddressRecord addressRecord, WeatherStation.Properties gridPoint,
+                       CacheableWeatherForecast forecast) {
     }
 
 }
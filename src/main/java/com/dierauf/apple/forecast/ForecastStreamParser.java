@@ -0,0 +1,92 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads an NWS gridpoint forecast document from the Jackson token stream, binding only updateTime and the first few
+ * periods. Everything else (context, geometry, remaining periods with their long detailed forecasts) is skipped
+ * without being materialized, and parsing stops as soon as everything needed has been read. The rest of the body is
+ * then read without being parsed, so that the HTTP connection is kept for the next call to NWS, rather than closed
+ * with a response half read.
+ * Replaces binding the whole document into WeatherForecast and truncating it afterwards, which was the largest
+ * allocation of a cache miss. Periods are bound by the application's ObjectMapper, so that they are read with the
+ * same configuration as any other response.
+ */
+@Component
+class ForecastStreamParser {
+
+    private final ObjectReader periodReader;
+
+    ForecastStreamParser(ObjectMapper objectMapper) {
+        this.periodReader = objectMapper.readerFor(WeatherForecast.Properties.Period.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    WeatherForecast parse(InputStream body, int maxPeriods) throws IOException {
+        WeatherForecast weatherForecast = parseUntilRead(body, maxPeriods);
+        body.transferTo(OutputStream.nullOutputStream());
+        return weatherForecast;
+    }
+
+    private WeatherForecast parseUntilRead(InputStream body, int maxPeriods) throws IOException {
+        try (JsonParser parser = periodReader.createParser(body)) {
+            // The body is left open to be drained, and is closed by whoever opened it.
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("NWS forecast is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                parser.nextToken();
+                if ("properties".equals(fieldName)) {
+                    return new WeatherForecast(parseProperties(parser, maxPeriods));
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IllegalStateException("NWS forecast has no properties");
+    }
+
+    private WeatherForecast.Properties parseProperties(JsonParser parser, int maxPeriods) throws IOException {
+        String updateTime = null;
+        List<WeatherForecast.Properties.Period> periods = new ArrayList<>(maxPeriods);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("updateTime".equals(fieldName)) {
+                updateTime = parser.getValueAsString();
+            } else if ("periods".equals(fieldName) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    if (periods.size() < maxPeriods) {
+                        periods.add(periodReader.readValue(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                    if (periods.size() == maxPeriods && updateTime != null) {
+                        break;
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+            // Stop early. Whatever remains of the document is not needed.
+            if (periods.size() == maxPeriods && updateTime != null) {
+                break;
+            }
+        }
+        return new WeatherForecast.Properties(updateTime, List.copyOf(periods));
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.StreamProperties;
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams forecasts to clients as Server-Sent Events. A client is sent the current forecast when it subscribes, and
+ * again whenever NWS issues a new one (its updateTime changes), rather than polling /forecast.
+ * Subscribers are grouped by NWS grid point, and a single poller per grid point keeps its forecast fresh and feeds
+ * every subscriber of that grid point. The poller calls NWS only when the cached forecast is due for refresh, so any
+ * number of subscribers costs no more upstream calls than a single one.
+ * Streams are answered asynchronously, so an open stream holds no thread while it waits for its next event.
+ */
+@Service
+@Slf4j
+class ForecastStreamService implements DisposableBean {
+
+    private final LocationService locationService;
+    private final WeatherService weatherService;
+    private final ForecastService forecastService;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ForecastJsonWriter jsonWriter;
+    private final StreamProperties streamProperties;
+    private final Map<GridPoint, GridPointStream> streams = new ConcurrentHashMap<>();
+    // Schedules the polls, which run on virtual threads, as they may wait for NWS.
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("forecast-stream-poller").daemon().factory());
+    private final ExecutorService pollExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    ForecastStreamService(LocationService locationService, WeatherService weatherService,
+                          ForecastService forecastService, ConcurrencyLimiter concurrencyLimiter,
+                          ForecastJsonWriter jsonWriter, StreamProperties streamProperties, ForecastMetrics metrics) {
+        this.locationService = locationService;
+        this.weatherService = weatherService;
+        this.forecastService = forecastService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.jsonWriter = jsonWriter;
+        this.streamProperties = streamProperties;
+        metrics.registerStreams(() -> streams.values().stream().mapToInt(stream -> stream.subscribers.size()).sum(),
+                streams::size);
+    }
+
+    /**
+     * Opens a stream of forecasts for an address, starting with the current forecast.
+     *
+     * @param address Street address.
+     * @return The stream, to be answered asynchronously.
+     */
+    SseEmitter subscribe(String address) {
+        AddressRecord addressRecord = locationService.retrieveLongitudeAndLatitude(address);
+        WeatherStation.Properties gridPoint = weatherService.resolveGridPoint(addressRecord.lat(), addressRecord.lon());
+        // Admitted under the same limit as a miss of /forecast, as the forecast may have to be retrieved from NWS.
+        CacheableWeatherForecast forecast = concurrencyLimiter.execute(
+                () -> forecastService.retrieveWeatherForecast(addressRecord, gridPoint));
+
+        GridPoint key = gridPoint.gridPoint();
+        SseEmitter emitter = new SseEmitter(streamProperties.getTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(emitter, addressRecord.displayName());
+        emitter.onCompletion(() -> unsubscribe(key, subscriber));
+        emitter.onTimeout(() -> unsubscribe(key, subscriber));
+        emitter.onError(e -> unsubscribe(key, subscriber));
+        // Sent before the stream is answered, and so before any poll can send the subscriber a newer forecast.
+        send(key, subscriber, forecast);
+        streams.compute(key, (k, stream) -> {
+            GridPointStream subscribed = stream != null ? stream : startPolling(gridPoint);
+            subscribed.subscribers.add(subscriber);
+            return subscribed;
+        });
+        log.info("Forecast stream opened for grid point: {}", key);
+        return emitter;
+    }
+
+    private GridPointStream startPolling(WeatherStation.Properties gridPoint) {
+        GridPointStream stream = new GridPointStream(gridPoint);
+        long interval = streamProperties.getPollInterval().toMillis();
+        stream.poller = scheduler.scheduleWithFixedDelay(() -> poll(stream), interval, interval,
+                TimeUnit.MILLISECONDS);
+        return stream;
+    }
+
+    // The last subscriber of a grid point stops its poller.
+    private void unsubscribe(GridPoint key, Subscriber subscriber) {
+        streams.computeIfPresent(key, (k, stream) -> {
+            stream.subscribers.remove(subscriber);
+            if (!stream.subscribers.isEmpty()) {
+                return stream;
+            }
+            stream.poller.cancel(false);
+            log.info("Last forecast stream closed for grid point: {}", key);
+            return null;
+        });
+    }
+
+    private void poll(GridPointStream stream) {
+        if (!stream.polling.compareAndSet(false, true)) {
+            return; // The previous poll is still waiting for NWS.
+        }
+        pollExecutor.execute(() -> {
+            try {
+                update(stream);
+            } finally {
+                stream.polling.set(false);
+            }
+        });
+    }
+
+    private void update(GridPointStream stream) {
+        GridPoint key = stream.gridPoint.gridPoint();
+        try {
+            // Calls NWS only if the forecast would be due for refresh before the next poll.
+            forecastService.refresh(stream.gridPoint, streamProperties.getPollInterval());
+        } catch (RuntimeException e) {
+            // Subscribers keep the forecast they have, and are sent a newer one once NWS answers again.
+            log.warn("Unable to refresh streamed forecast for grid point: {}", key, e);
+        }
+        Optional<ForecastEntry> entry = forecastService.findEntryInCache(key);
+        Instant now = Instant.now();
+        for (Subscriber subscriber : stream.subscribers) {
+            if (entry.isPresent() && !Objects.equals(updateTime(entry.get().weatherForecast()),
+                    subscriber.updateTime)) {
+                send(key, subscriber, CacheableWeatherForecast.of(subscriber.locationName, entry.get(), true,
+                        entry.get().isExpired(now)));
+            } else {
+                sendKeepAlive(key, subscriber);
+            }
+        }
+    }
+
+    private void send(GridPoint key, Subscriber subscriber, CacheableWeatherForecast forecast) {
+        try {
+            subscriber.emitter.send(SseEmitter.event()
+                    .name("forecast")
+                    .data(jsonWriter.write(forecast), MediaType.APPLICATION_JSON));
+            subscriber.updateTime = updateTime(forecast.weatherForecast());
+        } catch (IOException | IllegalStateException e) {
+            unsubscribe(key, subscriber); // The client has gone away, or the stream has timed out.
+        }
+    }
+
+    private void sendKeepAlive(GridPoint key, Subscriber subscriber) {
+        try {
+            subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+        } catch (IOException | IllegalStateException e) {
+            unsubscribe(key, subscriber);
+        }
+    }
+
+    private static String updateTime(WeatherForecast weatherForecast) {
+        return weatherForecast.properties() != null ? weatherForecast.properties().updateTime() : null;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        pollExecutor.shutdownNow();
+        streams.values().forEach(stream -> List.copyOf(stream.subscribers)
+                .forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    private static final class GridPointStream {
+
+        private final WeatherStation.Properties gridPoint;
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean polling = new AtomicBoolean();
+        private ScheduledFuture<?> poller;
+
+        private GridPointStream(WeatherStation.Properties gridPoint) {
+            this.gridPoint = gridPoint;
+        }
+
+    }
+
+    private static final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final String locationName;
+        // updateTime of the forecast last sent to the subscriber.
+        private volatile String updateTime;
+
+        private Subscriber(SseEmitter emitter, String locationName) {
+            this.emitter = emitter;
+            this.locationName = locationName;
+        }
+
+    }
+
+}
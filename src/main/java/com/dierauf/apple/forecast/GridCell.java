@@ -0,0 +1,23 @@
+package com.dierauf.apple.forecast;
+
+/**
+ * A small square on a fixed latitude/longitude lattice, used as a spatial index for resolved NWS grid points.
+ * The lattice spacing (0.01°) makes a cell at most about 1.1 km on a side and 1.6 km across, less than the 2.5 km NWS
+ * forecast grid. A cell that straddles the boundary of two NWS grid squares still reuses the grid point resolved for
+ * the first coordinates in it, so other coordinates in that cell may get the forecast of the neighbouring grid point:
+ * at most one grid point, about 2.5 km, away. A grid point is only reused within the cell it was resolved for, as the
+ * grid point of an adjacent cell may have been resolved for coordinates over 2 km away.
+ */
+record GridCell(long latIndex, long lonIndex) {
+
+    static final double CELL_DEGREES = 0.01;
+
+    static GridCell of(String lat, String lon) {
+        return new GridCell(index(lat), index(lon));
+    }
+
+    private static long index(String coordinate) {
+        return (long) Math.floor(Double.parseDouble(coordinate) / CELL_DEGREES);
+    }
+
+}
@@ -1,44 +1,101 @@
 package com.dierauf.apple.forecast;
 
+import com.dierauf.apple.forecast.config.CacheConfig;
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.config.UpstreamRequestFactories;
 import com.dierauf.apple.forecast.dto.AddressRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RestClient;
 
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 /**
  * Service for retrieving geographical coordinates (longitude and latitude) based on a given address or location name.
  * Utilizes the Nominatim API from OpenStreetMap to perform geocoding.
+ * Results are cached by normalized address, so repeated requests for the same address avoid the Nominatim round trip.
  */
 @Service
+@Slf4j
 class LocationService {
 
-    public static final String LOCATION_URL = "https://nominatim.openstreetmap.org";
-
     private final RestClient restClient;
+    private final CacheManager cacheManager;
+    private final UpstreamGuard upstreamGuard;
+    private final ForecastMetrics metrics;
+    private final SingleFlight<String, AddressRecord> inFlightSearches = new SingleFlight<>();
 
-    LocationService(RestClient.Builder clientBuilder) {
+    LocationService(RestClient.Builder clientBuilder, CacheManager cacheManager, UpstreamProperties upstreamProperties,
+                    UpstreamRequestFactories requestFactories, ForecastMetrics metrics) {
         this.restClient = clientBuilder
-                .baseUrl(LOCATION_URL)
+                .baseUrl(upstreamProperties.getNominatim().getBaseUrl())
+                .requestFactory(requestFactories.forUpstream(upstreamProperties.getNominatim()))
                 .build();
+        this.cacheManager = cacheManager;
+        this.upstreamGuard = new UpstreamGuard("nominatim", upstreamProperties.getNominatim(), metrics);
+        this.metrics = metrics;
     }
 
     AddressRecord retrieveLongitudeAndLatitude(String param) {
-        List<AddressRecord> addressRecords = restClient.get()
+        String key = AddressNormalizer.normalize(param);
+        Optional<AddressRecord> fromCache = findInCache(param);
+        if (fromCache.isPresent()) {
+            log.info("Geocode cache hit for address: {}", key);
+            return fromCache.get();
+        }
+        return retrieveMissing(param);
+    }
+
+    // Retrieves an address that findInCache has just missed, from Nominatim, without looking it up again.
+    AddressRecord retrieveMissing(String param) {
+        String key = AddressNormalizer.normalize(param);
+        log.info("Geocode cache miss for address: {}", key);
+        // Concurrent misses for the same normalized address share a single call to Nominatim.
+        return inFlightSearches.execute(key, () -> loadIntoCache(key, param));
+    }
+
+    // Looks up the address in the cache only, without calling Nominatim.
+    Optional<AddressRecord> findInCache(String param) {
+        String key = AddressNormalizer.normalize(param);
+        return Optional.ofNullable(metrics.timeCacheLookup(CacheConfig.GEOCODE_CACHE,
+                () -> geocodeCache().get(key, AddressRecord.class)));
+    }
+
+    private AddressRecord loadIntoCache(String key, String param) {
+        // Another flight may have filled the cache between our cache miss and this flight starting.
+        AddressRecord fromCache = geocodeCache().get(key, AddressRecord.class);
+        if (fromCache != null) {
+            return fromCache;
+        }
+        AddressRecord addressRecord = searchAddress(param);
+        metrics.timeCachePut(CacheConfig.GEOCODE_CACHE, () -> geocodeCache().put(key, addressRecord));
+        return addressRecord;
+    }
+
+    private AddressRecord searchAddress(String param) {
+        List<AddressRecord> addressRecords = upstreamGuard.call("search", () -> restClient.get()
                 .uri(uriBuilder -> uriBuilder.path("/search")
                         .queryParam("format", "jsonv2")
                         .queryParam("addressdetails", "1")
                         .queryParam("q", param)
                         .build())
                 .retrieve()
-                .body(new ParameterizedTypeReference<>() {
-                });
+                .body(new ParameterizedTypeReference<List<AddressRecord>>() {
+                }));
         if (CollectionUtils.isEmpty(addressRecords)) {
             throw new IllegalStateException("No address records found for: " + param);
         }
         return addressRecords.getFirst();
     }
 
+    private Cache geocodeCache() {
+        return Objects.requireNonNull(cacheManager.getCache(CacheConfig.GEOCODE_CACHE));
+    }
+
 }
@@ -0,0 +1,64 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.regex.Pattern;
+
+/**
+ * REST controller answering the other instances of a cluster, with the forecasts of the grid points this instance
+ * owns. Requests must carry the cluster secret, and are answered 404 Not Found unless clustering is enabled.
+ * The controller is registered either way, rather than on a condition, as conditions are fixed at build time when the
+ * application is built ahead of time (the aot profile).
+ */
+@RestController
+@AllArgsConstructor
+class PeerController {
+
+    // NWS forecast offices are identified by a few letters, e.g. "ILX".
+    private static final Pattern GRID_ID = Pattern.compile("\\w{1,8}");
+    // NWS grid coordinates are non-negative, and well below this on every forecast office's grid.
+    private static final int MAX_GRID_COORDINATE = 4_096;
+
+    private final ForecastService forecastService;
+    private final PeerService peers;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ForecastMetrics metrics;
+
+    // The cached entry, including its expiry and validators, rather than the /forecast body, so that the peer caches it
+    // exactly as this instance does.
+    @GetMapping(value = PeerService.PEER_FORECAST_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+    ForecastEntry getForecastEntry(@PathVariable(name = "gridId") String gridId,
+                                   @PathVariable(name = "gridX") int gridX,
+                                   @PathVariable(name = "gridY") int gridY,
+                                   @RequestHeader(name = PeerService.SECRET_HEADER, required = false) String secret) {
+        if (!peers.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+        }
+        if (!peers.isPeer(secret)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN);
+        }
+        if (!GRID_ID.matcher(gridId).matches() || gridX < 0 || gridX > MAX_GRID_COORDINATE || gridY < 0
+                || gridY > MAX_GRID_COORDINATE) {
+            throw new IllegalArgumentException("Invalid grid point: %s/%d,%d".formatted(gridId, gridX, gridY));
+        }
+        GridPoint key = new GridPoint(gridId, gridX, gridY);
+        // Only the owner calls NWS for a grid point, so that no other grid point is retrieved on behalf of a peer.
+        if (!peers.isOwner(key)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Grid point %s is owned by another instance"
+                    .formatted(key));
+        }
+        // As for /forecast, requests that wait on NWS count against the adaptive limit.
+        return metrics.timeRequest("peer-forecast", () -> forecastService.findFreshEntryInCache(key)
+                .orElseGet(() -> concurrencyLimiter.execute(() -> forecastService.retrieveForPeer(key))));
+    }
+
+}
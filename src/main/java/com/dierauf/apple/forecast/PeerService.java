@@ -0,0 +1,125 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.ClusterProperties;
+import com.dierauf.apple.forecast.config.UpstreamRequestFactories;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service to retrieve forecasts from the other instances of a cluster. Each grid point is owned by one instance,
+ * chosen by consistent hashing, and only its owner calls NWS for it. The other instances retrieve the forecast from
+ * the owner, and cache it themselves until it expires, so that calls to NWS stay flat as instances are added.
+ * Unless clustering is enabled (forecast.cluster.enabled), this instance owns every grid point.
+ */
+@Service
+@Slf4j
+class PeerService {
+
+    static final String PEER_FORECAST_PATH = "/internal/forecast/{gridId}/{gridX},{gridY}";
+    static final String SECRET_HEADER = "X-Forecast-Cluster-Secret";
+
+    // Null unless clustering is enabled.
+    private final String self;
+    private final byte[] secret;
+    private final ConsistentHashRing ring;
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+    private final ForecastMetrics metrics;
+
+    PeerService(RestClient.Builder clientBuilder, ClusterProperties clusterProperties,
+                UpstreamRequestFactories requestFactories, ForecastMetrics metrics) {
+        this.metrics = metrics;
+        if (!clusterProperties.isEnabled()) {
+            this.self = null;
+            this.secret = null;
+            this.ring = null;
+            return;
+        }
+        if (clusterProperties.getSecret() == null || clusterProperties.getSecret().isBlank()) {
+            throw new IllegalStateException("forecast.cluster.secret must be set when clustering is enabled");
+        }
+        this.secret = clusterProperties.getSecret().getBytes(StandardCharsets.UTF_8);
+        this.self = withoutTrailingSlash(clusterProperties.getSelf());
+        List<String> members = clusterProperties.getPeers().stream()
+                .map(PeerService::withoutTrailingSlash)
+                .distinct()
+                .toList();
+        if (self == null || !members.contains(self)) {
+            throw new IllegalStateException("forecast.cluster.self (%s) must be one of forecast.cluster.peers: %s"
+                    .formatted(self, members));
+        }
+        this.ring = new ConsistentHashRing(members, clusterProperties.getVirtualNodes());
+        for (String member : members.stream().filter(member -> !member.equals(self)).toList()) {
+            // Each peer is guarded like an upstream service, so that a slow or failing peer is skipped quickly.
+            String name = "peer-" + URI.create(member).getAuthority();
+            peers.put(member, new Peer(clientBuilder.clone()
+                    .baseUrl(member)
+                    .defaultHeader(SECRET_HEADER, clusterProperties.getSecret())
+                    .requestFactory(requestFactories.forUpstream(clusterProperties.getPeer()))
+                    .build(), new UpstreamGuard(name, clusterProperties.getPeer(), metrics)));
+        }
+        log.info("Clustered as {} with peers {}", self, peers.keySet());
+    }
+
+    /**
+     * Retrieves the forecast of a grid point from the instance owning it, unless this instance owns it.
+     *
+     * @param key Grid point of the forecast.
+     * @return The forecast of the owner, or empty when this instance owns the grid point, or the owner could not
+     * answer in time. The caller is then to retrieve the forecast from NWS itself.
+     */
+    Optional<ForecastEntry> retrieveFromOwner(GridPoint key) {
+        if (isOwner(key)) {
+            return Optional.empty();
+        }
+        String owner = ring.ownerOf(key.toString());
+        Peer peer = peers.get(owner);
+        try {
+            ForecastEntry entry = peer.upstreamGuard().call("forecast", () -> peer.restClient().get()
+                    .uri(PEER_FORECAST_PATH, key.gridId(), key.gridX(), key.gridY())
+                    .retrieve()
+                    .body(ForecastEntry.class));
+            metrics.countPeerFetch("success");
+            return Optional.ofNullable(entry);
+        } catch (RuntimeException e) {
+            // NWS is called instead, as it would be without a cluster.
+            log.warn("Unable to retrieve forecast for grid point {} from {}: {}", key, owner, e.getMessage());
+            metrics.countPeerFetch("error");
+            return Optional.empty();
+        }
+    }
+
+    boolean isEnabled() {
+        return ring != null;
+    }
+
+    // Whether a request comes from another instance of the cluster, which all share the secret.
+    boolean isPeer(String presentedSecret) {
+        // Compared in constant time, so that the secret cannot be guessed from response times.
+        return secret != null && presentedSecret != null
+                && MessageDigest.isEqual(secret, presentedSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Whether this instance owns the grid point, and so is the one to call NWS for it.
+    boolean isOwner(GridPoint key) {
+        return ring == null || !peers.containsKey(ring.ownerOf(key.toString()));
+    }
+
+    private static String withoutTrailingSlash(String url) {
+        return url != null && url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private record Peer(RestClient restClient, UpstreamGuard upstreamGuard) {
+    }
+
+}
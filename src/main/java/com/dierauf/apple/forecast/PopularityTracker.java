@@ -0,0 +1,122 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Tracks how often the forecast of each grid point is requested, so that the most popular forecasts can be kept warm.
+ * Frequencies are estimated with a count-min sketch, in fixed memory however many grid points are requested, and
+ * halved periodically, so that popularity reflects recent requests. Only the grid points frequent enough to rank among
+ * the most popular are remembered individually. Recording a request takes no lock. Ranking, and halving the counters
+ * once enough requests have been recorded, are left to the caller of mostPopular, e.g. CachePrewarmer on its own
+ * thread, rather than to requests.
+ */
+@Component
+class PopularityTracker {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0xD6E8FEB86659FD93L};
+    // Counters per row of the sketch. 16K counters keep estimates for a few thousand popular grid points accurate.
+    private static final int WIDTH = 1 << 14;
+
+    private final AtomicIntegerArray counters = new AtomicIntegerArray(DEPTH * WIDTH);
+    private final AtomicInteger additions = new AtomicInteger();
+    private final int resetAfter = 10 * WIDTH;
+    private final int top;
+    private final Map<GridPoint, WeatherStation.Properties> candidates = new ConcurrentHashMap<>();
+    // Estimated frequency of the least popular grid point kept on the last ranking. Rarer ones are not remembered.
+    private volatile int admissionThreshold;
+
+    PopularityTracker(CacheProperties cacheProperties) {
+        this.top = cacheProperties.getPrewarm().getTop();
+    }
+
+    void record(WeatherStation.Properties gridPoint) {
+        GridPoint key = gridPoint.gridPoint();
+        int frequency = increment(key);
+        // Room is kept for newcomers more popular than the least popular ranked grid point. Once that room is used up,
+        // newcomers wait for the next ranking, which makes room again, and also raises the bar for them. Their
+        // requests are still counted meanwhile.
+        if (frequency > admissionThreshold && candidates.size() < 4 * top && !candidates.containsKey(key)) {
+            candidates.putIfAbsent(key, gridPoint);
+        }
+        additions.incrementAndGet();
+    }
+
+    int estimate(GridPoint key) {
+        int hash = key.hashCode();
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.get(index(hash, row)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Ages the counters if due, then ranks the remembered grid points by estimated frequency, and forgets all but the
+     * most popular ones.
+     *
+     * @return The most popular grid points, most popular first.
+     */
+    synchronized List<WeatherStation.Properties> mostPopular() {
+        age();
+        // Estimates are taken once, before sorting, as requests keep incrementing them. Sorting by live estimates
+        // could see a grid point compare differently from one comparison to the next.
+        List<Ranked> ranked = candidates.values().stream()
+                .map(gridPoint -> new Ranked(gridPoint, estimate(gridPoint.gridPoint())))
+                .sorted(Comparator.comparingInt(Ranked::frequency).reversed())
+                .toList();
+        List<Ranked> mostPopular = ranked.subList(0, Math.min(top, ranked.size()));
+        ranked.subList(mostPopular.size(), ranked.size())
+                .forEach(forgotten -> candidates.remove(forgotten.gridPoint().gridPoint()));
+        admissionThreshold = mostPopular.size() < top ? 0 : mostPopular.getLast().frequency();
+        return mostPopular.stream()
+                .map(Ranked::gridPoint)
+                .toList();
+    }
+
+    // Counters are incremented without a lock. An increment racing with aging may be lost, making an estimate slightly
+    // low.
+    private int increment(GridPoint key) {
+        int hash = key.hashCode();
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.incrementAndGet(index(hash, row)));
+        }
+        return frequency;
+    }
+
+    // Halves every counter once per resetAfter requests recorded since the last aging, so that grid points that were
+    // popular a while ago make way for those popular now.
+    private void age() {
+        int halvings = additions.get() / resetAfter;
+        if (halvings == 0) {
+            return;
+        }
+        additions.addAndGet(-halvings * resetAfter);
+        int shift = Math.min(halvings, Integer.SIZE - 1);
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> shift);
+        }
+        admissionThreshold >>>= shift;
+    }
+
+    private static int index(int hash, int row) {
+        long spread = (hash + SEEDS[row]) * SEEDS[row];
+        return row * WIDTH + (int) ((spread + (spread >>> 32)) & (WIDTH - 1));
+    }
+
+    private record Ranked(WeatherStation.Properties gridPoint, int frequency) {
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.dierauf.apple.forecast;
+
+/**
+ * Token bucket rate limiter. Tokens are added at a fixed rate, up to a burst capacity, and each call takes one.
+ * A caller that finds the bucket empty reserves the next token and is told how long to wait for it, so that waiting
+ * callers are admitted in order, exactly at the configured rate. A caller that would have to wait longer than it is
+ * willing to is turned away immediately, without reserving a token.
+ */
+final class TokenBucket {
+
+    private final double nanosPerToken;
+    private final double capacity;
+    // Negative when tokens have been reserved by waiting callers.
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param tokensPerSecond Rate at which tokens are added. Must be positive.
+     * @param burst           Maximum number of tokens the bucket holds, i.e. calls that may be made at once after
+     *                        an idle period. At least 1.
+     * @param now             Current time, from System.nanoTime().
+     */
+    TokenBucket(double tokensPerSecond, int burst, long now) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + tokensPerSecond);
+        }
+        this.nanosPerToken = 1e9 / tokensPerSecond;
+        this.capacity = Math.max(1, burst);
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Reserves a token, if one is available within the maximum wait.
+     *
+     * @param now         Current time, from System.nanoTime().
+     * @param maxWaitNanos Longest the caller is willing to wait for the token.
+     * @return Nanoseconds to wait before making the call (0 if it may be made now), or -1 if no token is available
+     * within the maximum wait, in which case nothing was reserved.
+     */
+    synchronized long reserve(long now, long maxWaitNanos) {
+        refill(now);
+        long wait = waitFor(1);
+        if (wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return wait;
+    }
+
+    // Gives back a token reserved for a call that was not made after all, e.g. as no slot freed up in time. Never
+    // fills the bucket beyond its burst capacity.
+    synchronized void refund(long now) {
+        refill(now);
+        tokens = Math.min(capacity, tokens + 1);
+    }
+
+    // Nanoseconds until a token would be available to a caller arriving now, e.g. for a Retry-After header.
+    synchronized long estimateWait(long now) {
+        refill(now);
+        return waitFor(1);
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) / nanosPerToken);
+            refilledAt = now;
+        }
+    }
+
+    private long waitFor(double required) {
+        double missing = required - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing * nanosPerToken);
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.dierauf.apple.forecast;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of calling an upstream service when the call could not be made in time: the limit on the rate of
+ * calls to the upstream, or on calls in flight, would have kept the caller waiting past its deadline, or too many
+ * callers are already waiting. Also thrown while the circuit breaker of the upstream is open, as it is failing, and
+ * for requests that would wait on upstream services while the adaptive concurrency limit is reached.
+ * Answered with 503 Service Unavailable and a Retry-After header.
+ */
+public final class UpstreamBusyException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    UpstreamBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,333 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Guards every call to a single upstream service. Bounds the number of concurrent calls, so that a large batch fanned
+ * out on virtual threads cannot flood an upstream with requests, and optionally the rate of calls, so that the usage
+ * policy of the upstream is respected.
+ * Callers wait in order for both, but only up to a deadline and only so many at once. Callers that cannot be served
+ * in time fail immediately with UpstreamBusyException, so that throughput levels off at the upstream's limit instead
+ * of waiting callers piling up. A caller that was given a token of the rate limit, but no free slot in time, gives the
+ * token back, so that turned away callers do not use up the rate.
+ * A circuit breaker turns callers away just as quickly while the upstream is failing, rather than each of them waiting
+ * for its read timeout. Optionally, a call that is slow compared to recent calls is hedged: sent a second time, with
+ * whichever answers first being used, to cut the tail latency of the upstream.
+ */
+final class UpstreamGuard {
+
+    // Recent call times are kept per operation, and at least this many are needed before calls are hedged.
+    private static final int LATENCY_SAMPLES = 128;
+    private static final int MINIMUM_LATENCY_SAMPLES = 20;
+
+    private final String name;
+    private final Semaphore permits;
+    private final TokenBucket rateLimiter;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final CircuitBreaker circuitBreaker;
+    // Null unless calls are hedged.
+    private final UpstreamProperties.Hedging hedging;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final ExecutorService hedgeExecutor;
+    private final ForecastMetrics metrics;
+
+    UpstreamGuard(String name, UpstreamProperties.Host settings, ForecastMetrics metrics) {
+        this.name = name;
+        this.permits = new Semaphore(settings.getMaxConcurrency(), true);
+        this.rateLimiter = settings.getRateLimit() > 0
+                ? new TokenBucket(settings.getRateLimit(), settings.getBurst(), System.nanoTime())
+                : null;
+        this.maxQueued = settings.getMaxQueued();
+        this.maxWait = settings.getMaxWait();
+        UpstreamProperties.Breaker breaker = settings.getBreaker();
+        this.circuitBreaker = new CircuitBreaker(breaker.getWindowSize(), breaker.getFailureRateThreshold(),
+                breaker.getOpenDuration().toNanos());
+        this.hedging = settings.getHedging() != null && settings.getHedging().isEnabled() ? settings.getHedging() : null;
+        this.hedgeExecutor = hedging != null ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.metrics = metrics;
+        metrics.registerCircuitBreaker(name, circuitBreaker);
+    }
+
+    /**
+     * Calls the upstream once allowed to. As the call may be hedged, it must be idempotent, e.g. a GET request.
+     */
+    <T> T call(String operation, Supplier<T> upstreamCall) {
+        if (!circuitBreaker.tryAcquire(System.nanoTime())) {
+            throw reject("circuit-open", "%s is unavailable".formatted(name),
+                    Duration.ofNanos(circuitBreaker.remainingOpen(System.nanoTime())));
+        }
+        try {
+            acquire();
+        } catch (RuntimeException e) {
+            circuitBreaker.onIgnored();
+            throw e;
+        }
+        long hedgeDelay = hedgeDelay(operation);
+        if (hedgeDelay < 0) {
+            try {
+                return attempt(operation, upstreamCall);
+            } finally {
+                permits.release();
+            }
+        }
+        return hedged(operation, upstreamCall, hedgeDelay);
+    }
+
+    // A single call, holding a permit, whose outcome is recorded by the circuit breaker.
+    private <T> T attempt(String operation, Supplier<T> upstreamCall) {
+        long start = System.nanoTime();
+        try {
+            T result = metrics.timeUpstream(name, operation, upstreamCall);
+            long end = System.nanoTime();
+            circuitBreaker.onSuccess(end);
+            if (hedging != null) {
+                latencies.computeIfAbsent(operation, key -> new LatencyWindow()).record(end - start);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            if (isUpstreamFailure(e)) {
+                circuitBreaker.onFailure(System.nanoTime());
+            } else {
+                circuitBreaker.onIgnored();
+            }
+            throw e;
+        }
+    }
+
+    // A rejected request, or a call cancelled because its hedge answered first, says nothing about the upstream.
+    private static boolean isUpstreamFailure(RuntimeException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        return !(e instanceof HttpClientErrorException clientError)
+                || clientError.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    // Nanoseconds after which a call is hedged, or -1 if it is not. Calls are only hedged while the breaker is closed.
+    private long hedgeDelay(String operation) {
+        if (hedging == null || circuitBreaker.state() != CircuitBreaker.State.CLOSED) {
+            return -1;
+        }
+        LatencyWindow window = latencies.get(operation);
+        long percentile = window != null ? window.percentile(hedging.getPercentile()) : -1;
+        return percentile < 0 ? -1 : Math.max(percentile, hedging.getMinimumDelay().toNanos());
+    }
+
+    // The call is made on a virtual thread, so that a hedge can be sent if it has not been answered after the delay.
+    // The first successful answer wins, and the other call is cancelled.
+    private <T> T hedged(String operation, Supplier<T> upstreamCall, long hedgeDelay) {
+        ExecutorCompletionService<T> race = new ExecutorCompletionService<>(hedgeExecutor);
+        Attempt<T> primaryAttempt = new Attempt<>(operation, upstreamCall);
+        Attempt<T> hedgeAttempt = null;
+        Future<T> primary = race.submit(primaryAttempt);
+        Future<T> hedge = null;
+        try {
+            Future<T> first = race.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+            if (first != null) {
+                return result(first);
+            }
+            if (tryAcquireForHedge()) {
+                hedgeAttempt = new Attempt<>(operation, upstreamCall);
+                hedge = race.submit(hedgeAttempt);
+            }
+            first = race.take();
+            if (hedge == null) {
+                return result(first);
+            }
+            Future<T> winner = first.state() == Future.State.SUCCESS ? first : race.take();
+            if (winner.state() != Future.State.SUCCESS) {
+                return result(primary); // Both failed. The failure of the original call is thrown.
+            }
+            metrics.countHedge(name, operation, winner == primary ? "primary" : "hedge");
+            return result(winner);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while calling " + name, e);
+        } finally {
+            primary.cancel(true);
+            primaryAttempt.releaseUnlessStarted();
+            if (hedge != null) {
+                hedge.cancel(true);
+                hedgeAttempt.releaseUnlessStarted();
+            }
+        }
+    }
+
+    // A hedge only uses spare capacity. It is not sent if it would have to wait for the rate limit or a free slot.
+    private boolean tryAcquireForHedge() throws InterruptedException {
+        if (!permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        if (rateLimiter != null && rateLimiter.reserve(System.nanoTime(), 0) < 0) {
+            permits.release();
+            return false;
+        }
+        return true;
+    }
+
+    private static <T> T result(Future<T> future) {
+        if (future.state() == Future.State.SUCCESS) {
+            return future.resultNow();
+        }
+        Throwable failure = future.exceptionNow();
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure instanceof Error e) {
+            throw e;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    private void acquire() {
+        long start = System.nanoTime();
+        long deadline = start + maxWait.toNanos();
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw reject("queue-full", "Too many requests waiting to call %s".formatted(name), maxWait);
+        }
+        try {
+            awaitRateLimit(start, deadline);
+            try {
+                awaitPermit(deadline);
+            } catch (RuntimeException e) {
+                refundRateLimit(); // No call is made, so the next caller may have its token.
+                throw e;
+            }
+            metrics.recordLimiterWait(name, Duration.ofNanos(System.nanoTime() - start));
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    private void awaitRateLimit(long now, long deadline) {
+        if (rateLimiter == null) {
+            return;
+        }
+        long wait = rateLimiter.reserve(now, deadline - now);
+        if (wait < 0) {
+            throw reject("rate-limit", "Rate limit of %s exceeded".formatted(name),
+                    Duration.ofNanos(rateLimiter.estimateWait(now)));
+        }
+        if (wait > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(wait));
+            } catch (InterruptedException e) {
+                refundRateLimit();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to call " + name, e);
+            }
+        }
+    }
+
+    private void refundRateLimit() {
+        if (rateLimiter != null) {
+            rateLimiter.refund(System.nanoTime());
+        }
+    }
+
+    private void awaitPermit(long deadline) {
+        try {
+            if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw reject("concurrency", "Timed out waiting to call %s".formatted(name), maxWait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to call " + name, e);
+        }
+    }
+
+    // Free slots to call the upstream. Every slot is free again once no call is in flight.
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    // Callers waiting for the rate limit or a free slot.
+    int waitingCallers() {
+        return queued.get();
+    }
+
+    private UpstreamBusyException reject(String reason, String message, Duration retryAfter) {
+        metrics.countLimiterRejection(name, reason);
+        return new UpstreamBusyException(message + ", try again later", retryAfter);
+    }
+
+    // A call made on a virtual thread, holding a permit acquired for it. The permit is released exactly once: by the
+    // call once it has run, or by the caller if the call was cancelled before it started, and so will never run.
+    private final class Attempt<T> implements Callable<T> {
+
+        private final String operation;
+        private final Supplier<T> upstreamCall;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Attempt(String operation, Supplier<T> upstreamCall) {
+            this.operation = operation;
+            this.upstreamCall = upstreamCall;
+        }
+
+        @Override
+        public T call() {
+            if (!claimed.compareAndSet(false, true)) {
+                throw new CancellationException(); // Cancelled, and its permit released, before it started.
+            }
+            try {
+                return attempt(operation, upstreamCall);
+            } finally {
+                permits.release();
+            }
+        }
+
+        void releaseUnlessStarted() {
+            if (claimed.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+
+    }
+
+    // Ring buffer of the most recent successful call times of one operation.
+    private static final class LatencyWindow {
+
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private int next;
+        private int recorded;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            recorded = Math.min(recorded + 1, samples.length);
+        }
+
+        // The given percentile of the recorded call times, in nanoseconds, or -1 if too few calls were recorded.
+        synchronized long percentile(double percentile) {
+            if (recorded < MINIMUM_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, recorded);
+            Arrays.sort(sorted);
+            return sorted[Math.clamp((long) Math.ceil(percentile * recorded) - 1, 0, recorded - 1)];
+        }
+
+    }
+
+}
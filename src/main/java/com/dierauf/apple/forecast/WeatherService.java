@@ -1,70 +1,184 @@
 package com.dierauf.apple.forecast;
 
+import com.dierauf.apple.forecast.config.CacheConfig;
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.config.UpstreamRequestFactories;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
 import com.dierauf.apple.forecast.dto.WeatherForecast;
 import com.dierauf.apple.forecast.dto.WeatherStation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
 
 /**
  * Service to retrieve weather forecast information from the National Weather Service, based upon a provided address.
+ * Resolved NWS grid points are cached for days, since the mapping of coordinates to grid points almost never changes.
  */
 @Service
+@Slf4j
 class WeatherService {
 
-    static final String NWS_URL = "https://api.weather.gov";
+    // Raises the same exceptions for an unsuccessful response as RestClient.retrieve() does.
+    private static final ResponseErrorHandler ERROR_HANDLER = new DefaultResponseErrorHandler();
 
     private final RestClient restClient;
+    private final String nwsBaseUrl;
+    private final CacheManager cacheManager;
+    private final UpstreamGuard upstreamGuard;
+    private final ForecastFreshness forecastFreshness;
+    private final ForecastStreamParser forecastParser;
+    private final ForecastMetrics metrics;
+    private final SingleFlight<GridCell, WeatherStation.Properties> inFlightPoints = new SingleFlight<>();
 
-    WeatherService(RestClient.Builder clientBuilder) {
+    WeatherService(RestClient.Builder clientBuilder, CacheManager cacheManager, CacheProperties cacheProperties,
+                   UpstreamProperties upstreamProperties, UpstreamRequestFactories requestFactories,
+                   ForecastStreamParser forecastParser, ForecastMetrics metrics) {
         this.restClient = clientBuilder
-                .baseUrl(NWS_URL)
+                .baseUrl(upstreamProperties.getNws().getBaseUrl())
+                .requestFactory(requestFactories.forUpstream(upstreamProperties.getNws()))
                 .build();
+        this.nwsBaseUrl = upstreamProperties.getNws().getBaseUrl();
+        this.cacheManager = cacheManager;
+        this.upstreamGuard = new UpstreamGuard("nws", upstreamProperties.getNws(), metrics);
+        this.forecastFreshness = new ForecastFreshness(cacheProperties);
+        this.forecastParser = forecastParser;
+        this.metrics = metrics;
     }
 
     /**
-     * Retrieves weather forecast information from the National Weather Service (NWS) based upon latitude and longitude
+     * Resolves the National Weather Service (NWS) grid point, including the forecast URL, for latitude and longitude
      * coordinates.
      *
      * @param lat Latitude coordinate as a String.
      * @param lon Longitude coordinate as a String.
-     * @return WeatherForecast object containing the forecast data.
+     * @return WeatherStation properties identifying the grid point and its forecast URL.
      */
     // Note, the National Weather Service (NWS) API requires two requests.
-    // The first request retrieves the URL for data from the nearest NWS field office of the given coordinates.
-    // The second request retrieves the actual forecast data using the previous URL.
-    WeatherForecast retrieveWeatherForecast(String lat, String lon) {
-        String closestFieldOfficeUrl = retrieveClosestFieldOfficeUrl(lat, lon);
-        return retrieveForecastData(closestFieldOfficeUrl);
+    // The first request (this method) retrieves the URL for data from the nearest NWS field office of the given
+    // coordinates. The second request (retrieveForecastData) retrieves the actual forecast data using the previous URL.
+    // The first request is skipped when the coordinates fall in an already resolved grid cell.
+    WeatherStation.Properties resolveGridPoint(String lat, String lon) {
+        Optional<WeatherStation.Properties> fromCache = findGridPointInCache(lat, lon);
+        if (fromCache.isPresent()) {
+            log.info("Points cache hit for coordinates: {}, {}", lat, lon);
+            return fromCache.get();
+        }
+        return resolveMissingGridPoint(lat, lon);
     }
 
-    private String retrieveClosestFieldOfficeUrl(String lat, String lon) {
-        WeatherStation weatherStation = restClient.get()
-                .uri(uriBuilder -> uriBuilder.path("/points/%s,%s".formatted(lat, lon)) // Efficient String building.
-                        .build())
-                .retrieve()
-                .body(WeatherStation.class);
-        return Optional.ofNullable(Objects.requireNonNull(weatherStation).properties().forecast())
-                .orElseThrow(() -> new IllegalStateException(
-                        ("No National Weather Service station available for coordinates: %s, %s").formatted(lat, lon)));
+    // Resolves coordinates that findGridPointInCache has just missed, with NWS, without looking them up again.
+    WeatherStation.Properties resolveMissingGridPoint(String lat, String lon) {
+        GridCell gridCell = GridCell.of(lat, lon);
+        log.info("Points cache miss for coordinates: {}, {}", lat, lon);
+        // Concurrent misses for the same grid cell share a single call to NWS.
+        return inFlightPoints.execute(gridCell, () -> loadIntoCache(gridCell, lat, lon));
+    }
+
+    // Looks up the grid point in the cache only, without calling NWS.
+    Optional<WeatherStation.Properties> findGridPointInCache(String lat, String lon) {
+        return Optional.ofNullable(metrics.timeCacheLookup(CacheConfig.POINTS_CACHE,
+                () -> pointsCache().get(GridCell.of(lat, lon), WeatherStation.Properties.class)));
     }
 
-    private WeatherForecast retrieveForecastData(String closestFieldOfficeUrl) {
+    // The grid point properties of a known grid point, with the NWS forecast URL built from its id.
+    WeatherStation.Properties gridPointOf(GridPoint key) {
+        return new WeatherStation.Properties("%s/gridpoints/%s/%d,%d/forecast"
+                .formatted(nwsBaseUrl, key.gridId(), key.gridX(), key.gridY()), key.gridId(), key.gridX(), key.gridY());
+    }
+
+    private WeatherStation.Properties loadIntoCache(GridCell gridCell, String lat, String lon) {
+        // Another flight may have filled the cache between our cache miss and this flight starting.
+        WeatherStation.Properties fromCache = pointsCache().get(gridCell, WeatherStation.Properties.class);
+        if (fromCache != null) {
+            return fromCache;
+        }
+        WeatherStation.Properties gridPoint = retrieveClosestFieldOffice(lat, lon);
+        metrics.timeCachePut(CacheConfig.POINTS_CACHE, () -> pointsCache().put(gridCell, gridPoint));
+        return gridPoint;
+    }
+
+    /**
+     * Retrieves weather forecast information from the National Weather Service (NWS) for a resolved grid point.
+     * Only updateTime and the first MAX_PERIODS periods of the response are parsed.
+     * When a previous entry is given, the request is conditional on its validators (ETag, Last-Modified). If NWS
+     * answers 304 Not Modified, the previous entry is returned with extended freshness and nothing is parsed.
+     *
+     * @param gridPoint Grid point properties, as returned by resolveGridPoint.
+     * @param previous  The currently cached entry for the grid point, or null if there is none.
+     * @return ForecastEntry containing the forecast data, and until when it is fresh.
+     */
+    ForecastEntry retrieveForecastData(WeatherStation.Properties gridPoint, ForecastEntry previous) {
+        String closestFieldOfficeUrl = gridPoint.forecast();
         String urlPath = asUrlPath(closestFieldOfficeUrl);
-        WeatherForecast weatherForecast = restClient.get()
+        return upstreamGuard.call("forecast", () -> restClient.get()
                 .uri(uriBuilder -> uriBuilder.path(urlPath) // Efficient String handling.
                         .build())
+                .headers(headers -> addValidators(headers, previous))
+                // Exchange, rather than retrieve, so that the body can be streamed into the truncating parser.
+                .exchange((request, response) -> {
+                    Instant fetchedAt = Instant.now();
+                    HttpHeaders headers = response.getHeaders();
+                    if (previous != null && response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                        log.info("Forecast not modified for grid point: {}", gridPoint.gridPoint());
+                        return previous.withFreshness(fetchedAt,
+                                forecastFreshness.expiresAt(headers, previous.weatherForecast(), fetchedAt));
+                    }
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        ERROR_HANDLER.handleError(request.getURI(), request.getMethod(), response);
+                        throw new IllegalStateException("No forecast available from the provided NWS URL: %s"
+                                .formatted(closestFieldOfficeUrl));
+                    }
+                    // As the body is streamed, decode time includes reading the body from the network.
+                    long decodeStart = System.nanoTime();
+                    WeatherForecast weatherForecast = forecastParser.parse(response.getBody(),
+                            ForecastService.MAX_PERIODS);
+                    metrics.recordDecode("forecast", Duration.ofNanos(System.nanoTime() - decodeStart));
+                    return new ForecastEntry(weatherForecast, fetchedAt,
+                            forecastFreshness.expiresAt(headers, weatherForecast, fetchedAt),
+                            headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+                }));
+    }
+
+    private static void addValidators(HttpHeaders headers, ForecastEntry previous) {
+        if (previous == null) {
+            return;
+        }
+        if (previous.etag() != null) {
+            headers.setIfNoneMatch(previous.etag());
+        }
+        if (previous.lastModified() != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified());
+        }
+    }
+
+    private WeatherStation.Properties retrieveClosestFieldOffice(String lat, String lon) {
+        WeatherStation weatherStation = upstreamGuard.call("points", () -> restClient.get()
+                .uri(uriBuilder -> uriBuilder.path("/points/%s,%s".formatted(lat, lon)) // Efficient String building.
+                        .build())
                 .retrieve()
-                .body(WeatherForecast.class);
-        return Optional.of(Objects.requireNonNull(weatherForecast))
-                .orElseThrow(() -> new IllegalStateException("No forecast available from the provided NWS URL: %s"
-                        .formatted(closestFieldOfficeUrl)));
+                .body(WeatherStation.class));
+        WeatherStation.Properties properties = Objects.requireNonNull(weatherStation).properties();
+        return Optional.ofNullable(properties)
+                .filter(p -> p.forecast() != null)
+                .orElseThrow(() -> new IllegalStateException(
+                        ("No National Weather Service station available for coordinates: %s, %s").formatted(lat, lon)));
     }
 
     // Method abstracts URL path creation and exception details from business logic.
@@ -78,4 +192,8 @@ class WeatherService {
         }
     }
 
+    private Cache pointsCache() {
+        return Objects.requireNonNull(cacheManager.getCache(CacheConfig.POINTS_CACHE));
+    }
+
 }
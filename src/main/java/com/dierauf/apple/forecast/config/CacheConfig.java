@@ -1,27 +1,127 @@
 package com.dierauf.apple.forecast.config;
 
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Weigher;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.time.Instant;
 
 /**
  * Configuration class for setting up Caffeine cache manager.
- * Caches weather forecasts for 30 minutes to reduce external API calls.
+ * Caches weather forecasts until NWS advertises they expire (30 minutes by default) to reduce external API calls.
+ * Caches geocoding results and NWS grid point resolutions separately, each with their own size limit and time to live.
+ * Forecasts and geocoding results are bounded by their estimated size in memory, and forecasts may be kept compressed.
+ * Optionally keeps forecasts and geocoding results on disk as well, so that they survive a restart.
+ * Size, evictions, hits, and misses of each cache are exported as metrics. The hit ratio is left to dashboards, which
+ * compute it over any window from the hits and misses of cache.gets.
  */
 @Configuration
+@EnableConfigurationProperties(CacheProperties.class)
 public class CacheConfig {
 
+    public static final String FORECAST_CACHE = "forecasts";
+    public static final String GEOCODE_CACHE = "geocodes";
+    public static final String POINTS_CACHE = "points";
+
     @Bean
-    CacheManager cacheManager() {
-        CaffeineCacheManager manager = new CaffeineCacheManager("cacheManager");
-        manager.setCaffeine(Caffeine.newBuilder()
-                .expireAfterWrite(30, TimeUnit.MINUTES)
-                .maximumSize(100));
-        return manager;
+    CacheManager cacheManager(CacheProperties cacheProperties, ObjectMapper objectMapper) {
+        CaffeineCacheManager manager = cacheProperties.isCompactForecasts()
+                ? new CompactForecastCacheManager(objectMapper)
+                : new CaffeineCacheManager();
+        // Each tier has its own limits, so it is registered with its own Caffeine instance.
+        manager.registerCustomCache(FORECAST_CACHE, forecastCaffeine(cacheProperties).build());
+        manager.registerCustomCache(GEOCODE_CACHE, caffeine(cacheProperties.getGeocode(), CacheWeights::geocode)
+                .expireAfterWrite(cacheProperties.getGeocode().getTimeToLive())
+                .build());
+        manager.registerCustomCache(POINTS_CACHE, caffeine(cacheProperties.getPoints(), null)
+                .expireAfterWrite(cacheProperties.getPoints().getTimeToLive())
+                .build());
+        if (!cacheProperties.getPersistence().isEnabled()) {
+            return manager;
+        }
+        // Forecasts are kept on disk for as long as they may be served stale, geocodes for their time to live.
+        Duration staleWhileRevalidate = cacheProperties.getFreshness().getStaleWhileRevalidate();
+        TieredCacheManager tieredManager = new TieredCacheManager(manager, cacheProperties.getPersistence());
+        tieredManager.persist(FORECAST_CACHE, GridPoint.class, ForecastEntry.class,
+                entry -> entry.expiresAt().plus(staleWhileRevalidate));
+        tieredManager.persist(GEOCODE_CACHE, String.class, AddressRecord.class,
+                TieredCacheManager.timeToLive(cacheProperties.getGeocode().getTimeToLive()));
+        return tieredManager;
+    }
+
+    // Spring Boot binds metrics for Caffeine caches itself, but not for the tiered and compressed caches wrapping them.
+    @Bean
+    CacheMeterBinderProvider<org.springframework.cache.Cache> wrappedCaffeineCacheMeterBinderProvider() {
+        return (cache, tags) -> !(cache instanceof CaffeineCache)
+                && cache.getNativeCache() instanceof Cache<?, ?> nativeCache
+                ? new CaffeineCacheMetrics<>(nativeCache, cache.getName(), tags)
+                : null;
+    }
+
+    // Forecasts expire individually. They are kept past their expiry, so they can be served stale while being reloaded.
+    private static Caffeine<Object, Object> forecastCaffeine(CacheProperties cacheProperties) {
+        Duration staleWhileRevalidate = cacheProperties.getFreshness().getStaleWhileRevalidate();
+        Duration timeToLive = cacheProperties.getForecast().getTimeToLive();
+        Caffeine<Object, Object> caffeine = caffeine(cacheProperties.getForecast(), CacheWeights::forecast);
+        return caffeine.expireAfter(Expiry.writing((Object key, Object value) -> switch (value) {
+            case ForecastEntry entry -> expiresIn(entry.expiresAt().plus(staleWhileRevalidate));
+            case CompressedForecastCache.CompressedForecast compressed ->
+                    expiresIn(compressed.expiresAt().plus(staleWhileRevalidate));
+            default -> timeToLive;
+        }));
+    }
+
+    private static Duration expiresIn(Instant expiresAt) {
+        return positive(Duration.between(Instant.now(), expiresAt));
+    }
+
+    private static Duration positive(Duration duration) {
+        return duration.isNegative() ? Duration.ZERO : duration;
+    }
+
+    // Bounded by estimated memory if the tier has a memory budget and its entries can be weighed, by count otherwise.
+    private static Caffeine<Object, Object> caffeine(CacheProperties.Tier tier, Weigher<Object, Object> weigher) {
+        Caffeine<Object, Object> caffeine = Caffeine.newBuilder()
+                .recordStats(); // Hit and miss counts are available from the native Caffeine cache.
+        DataSize memoryBudget = tier.memoryBudget(Runtime.getRuntime().maxMemory());
+        if (weigher != null && memoryBudget != null) {
+            caffeine.maximumWeight(memoryBudget.toBytes()).weigher(weigher);
+        } else {
+            caffeine.maximumSize(tier.getMaximumSize());
+        }
+        return caffeine;
+    }
+
+    // Keeps the forecast cache compressed, underneath the tiered cache if there is one.
+    private static final class CompactForecastCacheManager extends CaffeineCacheManager {
+
+        private final ObjectMapper objectMapper;
+
+        private CompactForecastCacheManager(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        protected org.springframework.cache.Cache adaptCaffeineCache(String name, Cache<Object, Object> cache) {
+            org.springframework.cache.Cache adapted = super.adaptCaffeineCache(name, cache);
+            return FORECAST_CACHE.equals(name) ? new CompressedForecastCache(adapted, objectMapper) : adapted;
+        }
+
     }
 
 }
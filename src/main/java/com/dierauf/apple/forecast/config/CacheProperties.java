@@ -0,0 +1,102 @@
+package com.dierauf.apple.forecast.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Externalized sizing and expiry settings for each cache tier.
+ * Defaults are suitable for local development and may be overridden in application.properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "forecast.cache")
+public class CacheProperties {
+
+    // Forecasts change frequently, so keep them for a short period of time.
+    // The time to live is only used when NWS does not advertise when its forecast expires.
+    // Forecasts vary in size from a few hundred bytes to many KB, so they are bounded by memory rather than count.
+    // A quarter of the maximum heap by default, so that the budget follows -Xmx.
+    private Tier forecast = new Tier(100, Duration.ofMinutes(30), null, 0.25);
+
+    // Keep forecasts in memory as compressed JSON, so that several times as many fit in the same budget.
+    private boolean compactForecasts = false;
+
+    // Forecast entries carry their own expiry, taken from the NWS response.
+    private Freshness freshness = new Freshness();
+
+    // Geocoding results for an address very rarely change, so they can be kept much longer.
+    private Tier geocode = new Tier(10_000, Duration.ofHours(24), null, 0.05);
+
+    // The mapping of coordinates to an NWS grid point almost never changes, so it is kept for days.
+    private Tier points = new Tier(100_000, Duration.ofDays(7), null, 0);
+
+    // The most popular forecasts are refreshed before they expire, so that their requests never miss.
+    private Prewarm prewarm = new Prewarm();
+
+    // Optional disk-backed second level underneath the forecast and geocode caches, so that restarts start warm.
+    private Persistence persistence = new Persistence();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Tier {
+        // Only used when no maximum weight is set, nor a fraction of the heap.
+        private long maximumSize;
+        private Duration timeToLive;
+        // Estimated memory used by all entries of the cache, if set.
+        private DataSize maximumWeight;
+        // Otherwise, the memory budget as a fraction of the maximum heap size (-Xmx), if above 0.
+        private double maximumHeapFraction;
+
+        // The memory budget of the cache, or null if it is bounded by count.
+        public DataSize memoryBudget(long maximumHeap) {
+            if (maximumWeight != null) {
+                return maximumWeight;
+            }
+            return maximumHeapFraction > 0 ? DataSize.ofBytes((long) (maximumHeap * maximumHeapFraction)) : null;
+        }
+    }
+
+    @Data
+    public static class Freshness {
+        // Bounds applied to the expiry advertised by NWS, relative to when the forecast was retrieved.
+        private Duration minimumTimeToLive = Duration.ofMinutes(5);
+        private Duration maximumTimeToLive = Duration.ofHours(1);
+        // Entries this close to expiry are reloaded in the background, while still being served.
+        private Duration refreshAhead = Duration.ofMinutes(5);
+        // Expired entries are served, marked as stale, for this long while a reload runs in the background.
+        private Duration staleWhileRevalidate = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Prewarm {
+        private boolean enabled = true;
+        // Number of most requested grid points kept warm.
+        private int top = 100;
+        // How often the most requested forecasts are checked, and refreshed if they expire before the next check.
+        private Duration interval = Duration.ofMinutes(1);
+        // Upstream budget of pre-warming: forecasts refreshed or seeded per second, at most.
+        private double rate = 2;
+        // Addresses whose forecasts are loaded at startup, before they are first requested.
+        private List<String> seedAddresses = new ArrayList<>();
+    }
+
+    @Data
+    public static class Persistence {
+        private boolean enabled = false;
+        // One append-only file per cache is kept in this directory.
+        private Path directory = Path.of("cache");
+        // Load every entry into memory at startup. Otherwise entries are loaded when first requested.
+        private boolean preload = true;
+        // How often files are checked, and compacted when at least half of their content is superseded or expired.
+        private Duration compactionInterval = Duration.ofMinutes(10);
+    }
+
+}
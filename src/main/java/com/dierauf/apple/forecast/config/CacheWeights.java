@@ -0,0 +1,76 @@
+package com.dierauf.apple.forecast.config;
+
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+
+/**
+ * Weighers for caches sized by a memory budget. Weights are estimates of the heap used by an entry, in bytes.
+ * They need not be exact, only proportional to real usage, so that the budget bounds memory rather than entry count.
+ */
+final class CacheWeights {
+
+    // Object header, fields, and map node of a cache entry.
+    private static final int ENTRY_OVERHEAD = 128;
+    // Header and fields of a String, and of its backing array. Characters take one byte each (compact strings).
+    private static final int STRING_OVERHEAD = 56;
+
+    private CacheWeights() {
+    }
+
+    /**
+     * A forecast is held twice: as serialized JSON, and decoded as objects, of about the same size as the JSON.
+     * Forecasts held compressed are weighed by their compressed size.
+     */
+    static int forecast(Object key, Object value) {
+        return ENTRY_OVERHEAD + switch (value) {
+            case CompressedForecastCache.CompressedForecast compressed -> compressed.compressedJson().length
+                    + strings(compressed.hash(), compressed.etag(), compressed.lastModified());
+            case ForecastEntry entry when entry.serializedForecast() != null ->
+                    2 * entry.serializedForecast().json().length + strings(entry.etag(), entry.lastModified());
+            case ForecastEntry entry -> forecast(entry.weatherForecast()) + strings(entry.etag(), entry.lastModified());
+            default -> 0;
+        };
+    }
+
+    static int geocode(Object key, Object value) {
+        int weight = ENTRY_OVERHEAD + strings(String.valueOf(key));
+        if (value instanceof AddressRecord addressRecord) {
+            weight += strings(addressRecord.lat(), addressRecord.lon(), addressRecord.displayName());
+            AddressRecord.Address address = addressRecord.address();
+            if (address != null) {
+                weight += ENTRY_OVERHEAD + strings(address.house_number(), address.road(), address.town(),
+                        address.county(), address.state(), address.postcode(), address.country(),
+                        address.country_code());
+            }
+        }
+        return weight;
+    }
+
+    // A forecast that has not been serialized, e.g. one just read from disk.
+    private static int forecast(WeatherForecast weatherForecast) {
+        WeatherForecast.Properties properties = weatherForecast.properties();
+        if (properties == null) {
+            return 0;
+        }
+        int weight = strings(properties.updateTime());
+        if (properties.periods() != null) {
+            for (WeatherForecast.Properties.Period period : properties.periods()) {
+                weight += ENTRY_OVERHEAD + strings(period.name(), period.startTime(), period.endTime(),
+                        period.temperatureUnit(), period.icon(), period.detailedForecast());
+            }
+        }
+        return weight;
+    }
+
+    private static int strings(String... strings) {
+        int weight = 0;
+        for (String string : strings) {
+            if (string != null) {
+                weight += STRING_OVERHEAD + string.length();
+            }
+        }
+        return weight;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.dierauf.apple.forecast.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Externalized settings for running several instances of the application as a cluster.
+ * Defaults are suitable for local development and may be overridden in application.properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "forecast.cluster")
+public class ClusterProperties {
+
+    // Off by default: every instance calls the upstream services for its own cache misses.
+    private boolean enabled;
+
+    // Base URL of this instance, as its peers reach it, e.g. http://10.0.0.1:8080. Must be one of the peers.
+    private String self;
+
+    // Base URLs of every instance of the cluster, including this one. Every instance must be given the same list.
+    private List<String> peers = new ArrayList<>();
+
+    // Shared by every instance of the cluster, and sent with every request to a peer. Peers answer only requests
+    // carrying it, as they are served on the same port as /forecast. Required when clustering is enabled.
+    private String secret;
+
+    // Points per instance on the hash ring. More points spread grid points more evenly over the instances.
+    private int virtualNodes = 160;
+
+    // Calls to a peer, guarded like calls to an upstream service. The base URL of each peer is taken from peers.
+    // A peer that is slow or failing is skipped, and the upstream services called instead.
+    private UpstreamProperties.Host peer = new UpstreamProperties.Host(null, 64, Duration.ofSeconds(2),
+            0, 0, 256, Duration.ofSeconds(1), new UpstreamProperties.Breaker(20, 0.5, Duration.ofSeconds(10)),
+            new UpstreamProperties.Hedging(false, 0.95, Duration.ofMillis(50)));
+
+}
@@ -0,0 +1,141 @@
+package com.dierauf.apple.forecast.config;
+
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.SerializedForecast;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps forecasts in the in-memory cache as gzip-compressed JSON only, rather than as objects and JSON, so that many
+ * more forecasts fit in the same memory budget. Every read decompresses the JSON, trading CPU on cache hits for
+ * memory, but the forecast is decoded from it only if asked for, as hits write the JSON as is. The JSON and its hash
+ * survive the round trip unchanged, and forecasts are serialized with the application's ObjectMapper, as by
+ * ForecastJsonWriter, so ETags do not change.
+ */
+final class CompressedForecastCache implements Cache {
+
+    private final Cache memory;
+    private final ObjectMapper objectMapper;
+
+    CompressedForecastCache(Cache memory, ObjectMapper objectMapper) {
+        this.memory = memory;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * A forecast entry as stored: the validators and expiry as is, the forecast as compressed JSON.
+     */
+    record CompressedForecast(byte[] compressedJson, String hash, Instant fetchedAt, Instant expiresAt, String etag,
+                              String lastModified) {
+    }
+
+    @Override
+    public String getName() {
+        return memory.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return memory.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper valueWrapper = memory.get(key);
+        if (valueWrapper == null) {
+            return null;
+        }
+        return valueWrapper.get() instanceof CompressedForecast compressed
+                ? new SimpleValueWrapper(expand(compressed))
+                : valueWrapper;
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        Object value = valueWrapper != null ? valueWrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [%s]: %s"
+                    .formatted(type.getName(), value));
+        }
+        return type != null ? type.cast(value) : null;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            @SuppressWarnings("unchecked")
+            T value = (T) valueWrapper.get();
+            return value;
+        }
+        try {
+            T value = valueLoader.call();
+            put(key, value);
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        memory.put(key, value instanceof ForecastEntry entry ? compress(entry) : value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        memory.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        memory.clear();
+    }
+
+    private CompressedForecast compress(ForecastEntry entry) {
+        SerializedForecast serializedForecast = entry.serializedForecast() != null
+                ? entry.serializedForecast()
+                : serialize(entry.weatherForecast());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(serializedForecast.json().length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(serializedForecast.json());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new CompressedForecast(compressed.toByteArray(), serializedForecast.hash(), entry.fetchedAt(),
+                entry.expiresAt(), entry.etag(), entry.lastModified());
+    }
+
+    private ForecastEntry expand(CompressedForecast compressed) {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed.compressedJson()))) {
+            SerializedForecast serializedForecast = SerializedForecast.ofJson(gzip.readAllBytes(), compressed.hash(),
+                    objectMapper);
+            return new ForecastEntry(null, compressed.fetchedAt(), compressed.expiresAt(), compressed.etag(),
+                    compressed.lastModified(), serializedForecast);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SerializedForecast serialize(WeatherForecast weatherForecast) {
+        try {
+            return SerializedForecast.of(weatherForecast, objectMapper.writeValueAsBytes(weatherForecast));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.dierauf.apple.forecast.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Asks upstream services for gzip-compressed responses, and transparently decompresses them.
+ * The JDK HTTP client does neither on its own. Forecast documents compress to a fraction of their size.
+ */
+final class GzipDecompressingInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final String GZIP = "gzip";
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        ClientHttpResponse response = execution.execute(request, body);
+        String contentEncoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+        return GZIP.equalsIgnoreCase(contentEncoding) ? new DecompressedResponse(response) : response;
+    }
+
+    private static final class DecompressedResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final HttpHeaders headers;
+        private InputStream body;
+
+        DecompressedResponse(ClientHttpResponse response) {
+            this.response = response;
+            // The length and encoding of the compressed body no longer apply.
+            HttpHeaders decompressedHeaders = new HttpHeaders();
+            decompressedHeaders.putAll(response.getHeaders());
+            decompressedHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+            decompressedHeaders.remove(HttpHeaders.CONTENT_LENGTH);
+            this.headers = HttpHeaders.readOnlyHttpHeaders(decompressedHeaders);
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                PushbackInputStream compressed = new PushbackInputStream(response.getBody(), 1);
+                int first = compressed.read();
+                if (first == -1) {
+                    body = InputStream.nullInputStream(); // An empty body, e.g. of 304 Not Modified.
+                } else {
+                    compressed.unread(first);
+                    body = new GZIPInputStream(compressed);
+                }
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,350 @@
+package com.dierauf.apple.forecast.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Disk-backed store for the entries of one cache, in an append-only file of JSON lines.
+ * Each line holds the serialized key, the expiry, and the serialized value (null for a removal).
+ * On open, the file is scanned once to index the latest line of every live key. Values are read lazily, with a
+ * positional read of their line. Lines superseded by later writes or past their expiry are removed by compaction,
+ * which rewrites the file with live lines only.
+ */
+@Slf4j
+final class PersistentCacheStore implements Closeable {
+
+    private static final ObjectMapper OBJECT_MAPPER = JsonMapper.builder()
+            .findAndAddModules() // java.time support for cached entries.
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private final Path file;
+    private final Map<String, Slot> index = new ConcurrentHashMap<>();
+    // Positional reads and appends run concurrently, under the read lock, with appends taking turns on appendLock.
+    // Compaction and clearing replace the file, so they hold the write lock.
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock appendLock = new ReentrantLock();
+    private FileChannel channel;
+    // Guarded by appendLock, or the write lock.
+    private long writePosition;
+
+    private record Slot(long position, int length, long expiresAt) {
+    }
+
+    PersistentCacheStore(Path file) {
+        this.file = file;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            this.channel = open(file);
+            this.writePosition = channel.size();
+            buildIndex();
+            log.info("Opened persistent cache {} with {} live entries", file, index.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open persistent cache: " + file, e);
+        }
+    }
+
+    <T> T get(Object key, Class<T> valueType) {
+        String serializedKey = serialize(key);
+        lock.readLock().lock();
+        try {
+            Slot slot = index.get(serializedKey);
+            if (slot == null) {
+                return null;
+            }
+            if (slot.expiresAt() <= System.currentTimeMillis()) {
+                index.remove(serializedKey, slot);
+                return null;
+            }
+            ByteBuffer line = ByteBuffer.allocate(slot.length());
+            channel.read(line, slot.position());
+            return readValue(line.array(), valueType);
+        } catch (IOException e) {
+            log.warn("Unable to read {} from persistent cache {}", serializedKey, file, e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(Object key, Object value, Instant expiresAt) {
+        append(serialize(key), value, expiresAt.toEpochMilli());
+    }
+
+    void remove(Object key) {
+        String serializedKey = serialize(key);
+        if (index.remove(serializedKey) != null) {
+            append(serializedKey, null, 0);
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            channel.truncate(0);
+            writePosition = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to clear persistent cache: " + file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Visits every live entry, e.g. to load all of them into memory at startup.
+    <T> void forEach(Class<T> valueType, BiConsumer<String, T> action) {
+        index.keySet().forEach(serializedKey -> {
+            T value = get(new SerializedKey(serializedKey), valueType);
+            if (value != null) {
+                action.accept(serializedKey, value);
+            }
+        });
+    }
+
+    static <K> K deserializeKey(String serializedKey, Class<K> keyType) {
+        try {
+            return OBJECT_MAPPER.readValue(serializedKey, keyType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest, unexpired line of every key, if at least half of the file is garbage.
+     */
+    void compact() {
+        lock.writeLock().lock();
+        try {
+            // Checked under the lock, so that no append moves the write position or the index meanwhile.
+            long now = System.currentTimeMillis();
+            index.values().removeIf(slot -> slot.expiresAt() <= now);
+            long liveBytes = index.values().stream().mapToLong(Slot::length).sum();
+            if (writePosition <= 2 * liveBytes) {
+                return;
+            }
+            Path compacted = file.resolveSibling(file.getFileName() + ".compacting");
+            Map<String, Slot> compactedIndex = new ConcurrentHashMap<>();
+            long position = 0;
+            try (FileChannel target = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, Slot> entry : index.entrySet()) {
+                    Slot slot = entry.getValue();
+                    ByteBuffer line = ByteBuffer.allocate(slot.length());
+                    channel.read(line, slot.position());
+                    line.flip();
+                    target.write(line, position);
+                    compactedIndex.put(entry.getKey(), new Slot(position, slot.length(), slot.expiresAt()));
+                    position += slot.length();
+                }
+                target.force(true);
+            }
+            channel.close();
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = open(file);
+            log.info("Compacted persistent cache {} from {} to {} bytes", file, writePosition, position);
+            writePosition = position;
+            index.clear();
+            index.putAll(compactedIndex);
+        } catch (IOException e) {
+            log.warn("Unable to compact persistent cache {}", file, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(String serializedKey, Object value, long expiresAt) {
+        byte[] line = writeLine(serializedKey, value, expiresAt);
+        lock.readLock().lock();
+        appendLock.lock();
+        try {
+            long position = writePosition;
+            channel.write(ByteBuffer.wrap(line), position);
+            writePosition += line.length;
+            if (value == null) {
+                index.remove(serializedKey);
+            } else {
+                index.put(serializedKey, new Slot(position, line.length, expiresAt));
+            }
+        } catch (IOException e) {
+            // The in-memory cache is unaffected, so a failed write only costs a warm restart for this entry.
+            log.warn("Unable to write {} to persistent cache {}", serializedKey, file, e);
+        } finally {
+            appendLock.unlock();
+            lock.readLock().unlock();
+        }
+    }
+
+    // Scans every line once, keeping the position of the latest line per key. Values are not deserialized.
+    private void buildIndex() throws IOException {
+        long now = System.currentTimeMillis();
+        long position = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            LineReader reader = new LineReader(in);
+            byte[] line;
+            while ((line = reader.next()) != null) {
+                readHeader(line, position, now);
+                position += line.length;
+            }
+        }
+        // A torn final line, e.g. from a crash during a write, is overwritten by the next append.
+        writePosition = position;
+    }
+
+    private void readHeader(byte[] line, long position, long now) {
+        try (JsonParser parser = OBJECT_MAPPER.createParser(line)) {
+            String serializedKey = null;
+            long expiresAt = 0;
+            boolean removed = false;
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (fieldName) {
+                    case "k" -> serializedKey = parser.getText();
+                    case "e" -> expiresAt = parser.getLongValue();
+                    case "v" -> removed = value == JsonToken.VALUE_NULL;
+                    default -> parser.skipChildren();
+                }
+                if ("v".equals(fieldName)) {
+                    break; // The value is always written last, and is read lazily.
+                }
+            }
+            if (serializedKey == null) {
+                return;
+            }
+            if (removed || expiresAt <= now) {
+                index.remove(serializedKey);
+            } else {
+                index.put(serializedKey, new Slot(position, line.length, expiresAt));
+            }
+        } catch (IOException e) {
+            log.warn("Skipping unreadable line at position {} of persistent cache {}", position, file);
+        }
+    }
+
+    private static byte[] writeLine(String serializedKey, Object value, long expiresAt) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonGenerator generator = OBJECT_MAPPER.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("k", serializedKey);
+            generator.writeNumberField("e", expiresAt);
+            generator.writeFieldName("v");
+            OBJECT_MAPPER.writeValue(generator, value);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    private static <T> T readValue(byte[] line, Class<T> valueType) throws IOException {
+        try (JsonParser parser = OBJECT_MAPPER.createParser(line)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                parser.nextToken();
+                if ("v".equals(fieldName)) {
+                    return OBJECT_MAPPER.readValue(parser, valueType);
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    private static String serialize(Object key) {
+        if (key instanceof SerializedKey(String serializedKey)) {
+            return serializedKey;
+        }
+        try {
+            return OBJECT_MAPPER.writeValueAsString(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    // A key that has already been serialized, e.g. one read back from the index.
+    private record SerializedKey(String serializedKey) {
+    }
+
+    // Splits a stream into lines, keeping the line terminator, so that line lengths match positions in the file.
+    private static final class LineReader {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int position;
+        private int limit;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        byte[] next() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return null; // Incomplete final lines are ignored.
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                if (position < limit) {
+                    position++; // Include the terminator.
+                    line.write(buffer, start, position - start);
+                    return line.toByteArray();
+                }
+                line.write(buffer, start, position - start);
+            }
+        }
+
+    }
+
+}
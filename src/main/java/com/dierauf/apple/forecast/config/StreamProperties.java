@@ -0,0 +1,23 @@
+package com.dierauf.apple.forecast.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Externalized settings for streamed forecasts (GET /forecast/stream).
+ * Defaults are suitable for local development and may be overridden in application.properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "forecast.stream")
+public class StreamProperties {
+
+    // How often the forecast of each streamed grid point is checked for an update. Streams without an update are sent
+    // a keep-alive comment instead, so that closed connections are noticed.
+    private Duration pollInterval = Duration.ofMinutes(1);
+
+    // Streams are closed after this long, and clients reconnect (as browsers do for an EventSource).
+    private Duration timeout = Duration.ofMinutes(30);
+
+}
@@ -0,0 +1,101 @@
+package com.dierauf.apple.forecast.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * A cache with two levels: the in-memory Caffeine cache, and a persistent store on disk underneath it.
+ * Reads are served from memory, falling back to disk, and values read from disk are promoted back into memory.
+ * Writes go to both levels, so entries survive a restart.
+ */
+final class TieredCache implements Cache {
+
+    private final Cache memory;
+    private final PersistentCacheStore disk;
+    private final Class<?> valueType;
+    private final Function<Object, Instant> expiry;
+
+    TieredCache(Cache memory, PersistentCacheStore disk, Class<?> valueType, Function<Object, Instant> expiry) {
+        this.memory = memory;
+        this.disk = disk;
+        this.valueType = valueType;
+        this.expiry = expiry;
+    }
+
+    @Override
+    public String getName() {
+        return memory.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return memory.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper fromMemory = memory.get(key);
+        if (fromMemory != null) {
+            return fromMemory;
+        }
+        Object fromDisk = disk.get(key, valueType);
+        if (fromDisk == null) {
+            return null;
+        }
+        memory.put(key, fromDisk);
+        return new SimpleValueWrapper(fromDisk);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        Object value = valueWrapper != null ? valueWrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [%s]: %s"
+                    .formatted(type.getName(), value));
+        }
+        return type != null ? type.cast(value) : null;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper != null) {
+            @SuppressWarnings("unchecked")
+            T value = (T) valueWrapper.get();
+            return value;
+        }
+        try {
+            T value = valueLoader.call();
+            put(key, value);
+            return value;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        memory.put(key, value);
+        if (value != null) {
+            disk.put(key, value, expiry.apply(value));
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        memory.evict(key);
+        disk.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        memory.clear();
+        disk.clear();
+    }
+
+}
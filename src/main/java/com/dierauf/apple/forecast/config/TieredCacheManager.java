@@ -0,0 +1,91 @@
+package com.dierauf.apple.forecast.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Cache manager that places a persistent store underneath selected caches of the in-memory cache manager, so that
+ * a restarted instance starts warm instead of sending a burst of requests to the upstream services.
+ * Compacts every persistent store in the background.
+ */
+@Slf4j
+final class TieredCacheManager implements CacheManager, DisposableBean {
+
+    private final CacheManager memory;
+    private final CacheProperties.Persistence persistence;
+    private final Map<String, TieredCache> tieredCaches = new ConcurrentHashMap<>();
+    private final Map<String, PersistentCacheStore> stores = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("persistent-cache-compactor").daemon().factory());
+
+    TieredCacheManager(CacheManager memory, CacheProperties.Persistence persistence) {
+        this.memory = memory;
+        this.persistence = persistence;
+        long interval = persistence.getCompactionInterval().toMillis();
+        compactor.scheduleWithFixedDelay(() -> stores.values().forEach(PersistentCacheStore::compact),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a persistent store underneath the named in-memory cache.
+     *
+     * @param name      Name of the cache.
+     * @param keyType   Type of the keys, used to promote entries into memory at startup.
+     * @param valueType Type of the values.
+     * @param expiry    Until when a value is kept on disk.
+     */
+    <K, V> void persist(String name, Class<K> keyType, Class<V> valueType, Function<V, Instant> expiry) {
+        Cache memoryCache = Objects.requireNonNull(memory.getCache(name));
+        PersistentCacheStore store = new PersistentCacheStore(persistence.getDirectory().resolve(name + ".jsonl"));
+        stores.put(name, store);
+        tieredCaches.put(name, new TieredCache(memoryCache, store, valueType, value -> expiry.apply(valueType.cast(value))));
+        if (persistence.isPreload()) {
+            store.forEach(valueType, (serializedKey, value) ->
+                    memoryCache.put(PersistentCacheStore.deserializeKey(serializedKey, keyType), value));
+            log.info("Loaded cache {} from disk", name);
+        }
+    }
+
+    // Until when values of a fixed time to live are kept on disk.
+    static <V> Function<V, Instant> timeToLive(Duration timeToLive) {
+        return value -> Instant.now().plus(timeToLive);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache tieredCache = tieredCaches.get(name);
+        return tieredCache != null ? tieredCache : memory.getCache(name);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return memory.getCacheNames();
+    }
+
+    @Override
+    public void destroy() {
+        compactor.shutdownNow();
+        stores.values().forEach(store -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.warn("Unable to close persistent cache", e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.dierauf.apple.forecast.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+
+/**
+ * Configuration class for calls to upstream services.
+ * All upstream services share one JDK HTTP client, and so its pool of keep-alive connections. HTTP/2 is negotiated
+ * where the upstream supports it, falling back to HTTP/1.1 otherwise.
+ */
+@Configuration
+@EnableConfigurationProperties(UpstreamProperties.class)
+public class UpstreamConfig {
+
+    @Bean
+    HttpClient upstreamHttpClient(UpstreamProperties upstreamProperties) {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(upstreamProperties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Bean
+    UpstreamRequestFactories upstreamRequestFactories(HttpClient upstreamHttpClient) {
+        return new UpstreamRequestFactories(upstreamHttpClient);
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.dierauf.apple.forecast.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Externalized settings for each upstream service (OpenStreetMap Nominatim and the National Weather Service).
+ * Defaults are suitable for local development and may be overridden in application.properties.
+ */
+@Data
+@ConfigurationProperties(prefix = "forecast.upstream")
+public class UpstreamProperties {
+
+    // Shared by every upstream, as they all use the same HTTP client.
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    // The Nominatim usage policy allows an absolute maximum of one request per second.
+    // Hedged calls would count against that limit, so Nominatim calls are not hedged.
+    private Host nominatim = new Host("https://nominatim.openstreetmap.org", 4, Duration.ofSeconds(5),
+            1, 1, 16, Duration.ofSeconds(5), new Breaker(20, 0.5, Duration.ofSeconds(30)),
+            new Hedging(false, 0.95, Duration.ofMillis(50)));
+    private Host nws = new Host("https://api.weather.gov", 16, Duration.ofSeconds(5),
+            0, 0, 256, Duration.ofSeconds(5), new Breaker(20, 0.5, Duration.ofSeconds(30)),
+            new Hedging(true, 0.95, Duration.ofMillis(50)));
+
+    // Requests for a forecast that is not cached, and so wait on upstream services, are admitted up to this limit.
+    private AdaptiveLimit adaptiveLimit = new AdaptiveLimit();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Host {
+        // Root URL of the upstream service, e.g. of a local simulator when load testing.
+        private String baseUrl;
+        // Maximum number of calls in flight to this upstream at once. Further callers wait for a free slot.
+        // As the JDK HTTP client has no per-host pool limit, this also bounds the connections opened to the upstream.
+        private int maxConcurrency;
+        // Maximum time to wait for the response to a single call.
+        private Duration readTimeout;
+        // Maximum sustained rate of calls to this upstream, per second. 0 disables rate limiting.
+        private double rateLimit;
+        // Calls that may be made at once, above the rate limit, after an idle period.
+        private int burst;
+        // Maximum number of callers waiting to call this upstream. Further callers are turned away immediately.
+        private int maxQueued;
+        // Maximum time a caller waits for the rate limit and a free slot. Callers that would wait longer are turned
+        // away immediately, rather than piling up.
+        private Duration maxWait;
+        private Breaker breaker;
+        private Hedging hedging;
+    }
+
+    /**
+     * Circuit breaker of an upstream. While open, calls fail immediately instead of waiting for a failing upstream.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Breaker {
+        // Number of most recent calls the failure rate is taken over. The breaker does not open before this many.
+        private int windowSize;
+        // Share of failed calls, between 0 and 1, at which the breaker opens.
+        private double failureRateThreshold;
+        // Time the breaker stays open before a single trial call is let through.
+        private Duration openDuration;
+    }
+
+    /**
+     * Hedged calls of an upstream. A call still unanswered after the given percentile of recent call times is sent a
+     * second time, and whichever answers first is used. Only spare capacity is used for the second call.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hedging {
+        private boolean enabled;
+        private double percentile;
+        // Calls are never hedged sooner than this, even if the upstream is usually faster.
+        private Duration minimumDelay;
+    }
+
+    /**
+     * Adaptive limit on forecast requests waiting on upstream services at once. Cache hits of /forecast and of
+     * batches are always admitted.
+     */
+    @Data
+    public static class AdaptiveLimit {
+        private boolean enabled = true;
+        // The first misses of a cold instance come in a burst and are slow to answer, so the limit starts high, and
+        // shrinks from there if the upstream services are congested.
+        private int initialLimit = 100;
+        private int minLimit = 4;
+        private int maxLimit = 200;
+        // Requests slower than this, or turned away by an upstream, shrink the limit by the backoff ratio.
+        private Duration latencyThreshold = Duration.ofSeconds(2);
+        private double backoffRatio = 0.9;
+        // Suggested to clients turned away, in the Retry-After header.
+        private Duration retryAfter = Duration.ofSeconds(1);
+    }
+
+}
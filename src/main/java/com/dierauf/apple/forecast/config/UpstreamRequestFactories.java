@@ -0,0 +1,28 @@
+package com.dierauf.apple.forecast.config;
+
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.InterceptingClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.net.http.HttpClient;
+import java.util.List;
+
+/**
+ * Creates the request factory for each upstream service. Every factory uses the shared HTTP client, with the read
+ * timeout of its upstream, and requests gzip-compressed responses.
+ */
+public class UpstreamRequestFactories {
+
+    private final HttpClient httpClient;
+
+    UpstreamRequestFactories(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public ClientHttpRequestFactory forUpstream(UpstreamProperties.Host host) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(host.getReadTimeout());
+        return new InterceptingClientHttpRequestFactory(requestFactory, List.of(new GzipDecompressingInterceptor()));
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.dierauf.apple.forecast.dto;
+
+/**
+ * Result for a single address of a batch forecast request. Exactly one of forecast and error is set.
+ */
+public record BatchForecastResult(String address, CacheableWeatherForecast forecast, String error) {
+
+    public static BatchForecastResult success(String address, CacheableWeatherForecast forecast) {
+        return new BatchForecastResult(address, forecast, null);
+    }
+
+    public static BatchForecastResult failure(String address, String error) {
+        return new BatchForecastResult(address, null, error);
+    }
+
+}
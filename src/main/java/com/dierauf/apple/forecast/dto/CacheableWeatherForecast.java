@@ -1,4 +1,32 @@
 package com.dierauf.apple.forecast.dto;
 
-public record CacheableWeatherForecast(String locationName, WeatherForecast weatherForecast, boolean isFromCache) {
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Forecast returned to clients. isStale is set when an expired forecast is served while a newer one is being retrieved.
+ * serializedForecast, when set, is the weather forecast already serialized to JSON, to be written as is.
+ * The weather forecast is then decoded from it only if asked for, e.g. by Jackson for a batch response.
+ */
+public record CacheableWeatherForecast(String locationName, WeatherForecast weatherForecast, boolean isFromCache,
+                                       boolean isStale, @JsonIgnore SerializedForecast serializedForecast) {
+
+    public CacheableWeatherForecast(String locationName, WeatherForecast weatherForecast, boolean isFromCache,
+                                    boolean isStale) {
+        this(locationName, weatherForecast, isFromCache, isStale, null);
+    }
+
+    public static CacheableWeatherForecast of(String locationName, ForecastEntry entry, boolean isFromCache,
+                                              boolean isStale) {
+        return entry.serializedForecast() != null
+                ? new CacheableWeatherForecast(locationName, null, isFromCache, isStale, entry.serializedForecast())
+                : new CacheableWeatherForecast(locationName, entry.weatherForecast(), isFromCache, isStale);
+    }
+
+    @Override
+    public WeatherForecast weatherForecast() {
+        return weatherForecast == null && serializedForecast != null
+                ? serializedForecast.weatherForecast()
+                : weatherForecast;
+    }
+
 }
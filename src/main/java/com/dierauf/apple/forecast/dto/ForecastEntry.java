@@ -0,0 +1,63 @@
+package com.dierauf.apple.forecast.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A cached forecast for one NWS grid point, together with when it was retrieved and until when it is fresh.
+ * The expiry is derived from the NWS response (Cache-Control, Expires, updateTime), rather than a fixed time to live.
+ * The ETag and Last-Modified validators allow the forecast to be refreshed with a conditional request.
+ * The forecast is also kept serialized, for cache hits. It is not persisted, but serialized again when needed.
+ * An entry read back from the compressed cache holds only the serialized forecast, and decodes it when first asked for.
+ */
+public record ForecastEntry(
+        WeatherForecast weatherForecast,
+        Instant fetchedAt,
+        Instant expiresAt,
+        String etag,
+        String lastModified,
+        @JsonIgnore
+        SerializedForecast serializedForecast
+) {
+
+    // Entries read from JSON, from disk or a peer, are serialized again when needed.
+    @JsonCreator
+    public ForecastEntry(WeatherForecast weatherForecast, Instant fetchedAt, Instant expiresAt, String etag,
+                         String lastModified) {
+        this(weatherForecast, fetchedAt, expiresAt, etag, lastModified, null);
+    }
+
+    @Override
+    public WeatherForecast weatherForecast() {
+        return weatherForecast == null && serializedForecast != null
+                ? serializedForecast.weatherForecast()
+                : weatherForecast;
+    }
+
+    public boolean isExpired(Instant now) {
+        return !now.isBefore(expiresAt);
+    }
+
+    // True once the entry is within refreshAhead of its expiry, or already expired.
+    public boolean isDueForRefresh(Instant now, Duration refreshAhead) {
+        return !now.isBefore(expiresAt.minus(refreshAhead));
+    }
+
+    // The serialized forecast no longer applies to a different forecast.
+    public ForecastEntry withWeatherForecast(WeatherForecast weatherForecast) {
+        return new ForecastEntry(weatherForecast, fetchedAt, expiresAt, etag, lastModified, null);
+    }
+
+    public ForecastEntry withSerializedForecast(SerializedForecast serializedForecast) {
+        return new ForecastEntry(weatherForecast, fetchedAt, expiresAt, etag, lastModified, serializedForecast);
+    }
+
+    // Used when NWS confirms, with 304 Not Modified, that the forecast has not changed.
+    public ForecastEntry withFreshness(Instant fetchedAt, Instant expiresAt) {
+        return new ForecastEntry(weatherForecast, fetchedAt, expiresAt, etag, lastModified, serializedForecast);
+    }
+
+}
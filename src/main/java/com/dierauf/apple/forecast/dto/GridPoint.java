@@ -0,0 +1,18 @@
+package com.dierauf.apple.forecast.dto;
+
+/**
+ * Identifies a single 2.5 km square of the National Weather Service forecast grid, e.g. "ILX/63,39".
+ * Every address within the square shares the same forecast.
+ */
+public record GridPoint(
+        String gridId,
+        int gridX,
+        int gridY
+) {
+
+    @Override
+    public String toString() {
+        return "%s/%d,%d".formatted(gridId, gridX, gridY);
+    }
+
+}
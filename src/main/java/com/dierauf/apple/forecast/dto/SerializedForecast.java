@@ -0,0 +1,80 @@
+package com.dierauf.apple.forecast.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A forecast serialized to JSON once, when it is cached, so that cache hits write these bytes instead of serializing
+ * the forecast again. The hash identifies the content, e.g. for ETags.
+ * A forecast read back from compressed JSON is decoded only if it is asked for, as cache hits need only the bytes.
+ * The bytes are never modified. Equality is identity.
+ */
+public final class SerializedForecast {
+
+    private final byte[] json;
+    private final String hash;
+    // Null unless the forecast is to be decoded from json.
+    private final ObjectMapper objectMapper;
+    // Decoded at most once per thread racing for it, which is harmless as the result is the same.
+    private volatile WeatherForecast weatherForecast;
+
+    private SerializedForecast(byte[] json, String hash, ObjectMapper objectMapper, WeatherForecast weatherForecast) {
+        this.json = json;
+        this.hash = hash;
+        this.objectMapper = objectMapper;
+        this.weatherForecast = weatherForecast;
+    }
+
+    /**
+     * @param weatherForecast The forecast.
+     * @param json            The forecast serialized to JSON.
+     */
+    public static SerializedForecast of(WeatherForecast weatherForecast, byte[] json) {
+        return new SerializedForecast(json, hash(json), null, weatherForecast);
+    }
+
+    /**
+     * @param json         A forecast serialized to JSON, e.g. by of.
+     * @param hash         The hash of json, as computed when it was serialized.
+     * @param objectMapper Decodes the forecast, when it is first asked for.
+     */
+    public static SerializedForecast ofJson(byte[] json, String hash, ObjectMapper objectMapper) {
+        return new SerializedForecast(json, hash, objectMapper, null);
+    }
+
+    public byte[] json() {
+        return json;
+    }
+
+    public String hash() {
+        return hash;
+    }
+
+    public WeatherForecast weatherForecast() {
+        WeatherForecast decoded = weatherForecast;
+        if (decoded == null) {
+            try {
+                decoded = objectMapper.readValue(json, WeatherForecast.class);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to deserialize forecast", e);
+            }
+            weatherForecast = decoded;
+        }
+        return decoded;
+    }
+
+    private static String hash(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            // 128 bits are plenty to tell forecasts apart.
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every JDK provides SHA-256.
+        }
+    }
+
+}
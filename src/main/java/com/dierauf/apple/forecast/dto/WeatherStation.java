@@ -5,8 +5,16 @@ public record WeatherStation(
 ) {
 
     public record Properties(
-            String forecast
+            String forecast,
+            String gridId,
+            int gridX,
+            int gridY
     ) {
+
+        public GridPoint gridPoint() {
+            return new GridPoint(gridId, gridX, gridY);
+        }
+
     }
 
 }
@@ -0,0 +1,30 @@
+package com.dierauf.apple.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for AddressNormalizer.
+ * Verifies that trivially different spellings of an address share the same cache key.
+ */
+class AddressNormalizerTest {
+
+    @Test
+    void normalizesCaseWhitespaceAndPunctuation() {
+        assertEquals("123 main st springfield il 62704",
+                AddressNormalizer.normalize("  123 Main St.,   Springfield, IL 62704 "));
+    }
+
+    @Test
+    void normalizesCommonAbbreviations() {
+        assertEquals(AddressNormalizer.normalize("123 North Main Street, Apartment #4"),
+                AddressNormalizer.normalize("123 N Main St Apt #4"));
+    }
+
+    @Test
+    void blankAddressNormalizesToEmpty() {
+        assertEquals("", AddressNormalizer.normalize("   "));
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.dto.BatchForecastResult;
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.dierauf.apple.forecast.TestFixtures.UPDATE_TIME;
+import static com.dierauf.apple.forecast.TestFixtures.awaitUntil;
+import static com.dierauf.apple.forecast.TestFixtures.forecast;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for BatchForecastService.
+ * Mocks the forecast service to verify that misses beyond the concurrency limit, and misses that fail even without a
+ * message, fail on their own with an error, while the other addresses of the batch are answered.
+ */
+class BatchForecastServiceTest {
+
+    private static final List<String> ADDRESSES = List.of("123 Main St, Springfield, IL 62704",
+            "125 Main St, Springfield, IL 62704", "127 Main St, Springfield, IL 62704");
+
+    private final ForecastService forecastService = mock(ForecastService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private BatchForecastService batchForecastService;
+
+    @BeforeEach
+    void setUp() {
+        UpstreamProperties upstreamProperties = new UpstreamProperties();
+        upstreamProperties.getAdaptiveLimit().setInitialLimit(2);
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(upstreamProperties,
+                new ForecastMetrics(registry));
+        batchForecastService = new BatchForecastService(forecastService, concurrencyLimiter);
+        when(forecastService.lookUp(anyString()))
+                .thenAnswer(i -> new ForecastService.CacheLookup(i.getArgument(0), null, null, null));
+    }
+
+    @Test
+    void missesBeyondTheLimitAreShed() {
+        when(forecastService.retrieve(any())).thenAnswer(invocation -> {
+            // Both admitted misses are in flight until the third has been turned away.
+            awaitUntil(() -> shed() == 1);
+            ForecastService.CacheLookup lookup = invocation.getArgument(0);
+            return new CacheableWeatherForecast(lookup.address(), forecast(UPDATE_TIME, 1), false, false);
+        });
+
+        List<BatchForecastResult> results = batchForecastService.getForecasts(ADDRESSES);
+
+        assertEquals(ADDRESSES, results.stream().map(BatchForecastResult::address).toList());
+        List<String> errors = results.stream()
+                .filter(result -> result.forecast() == null)
+                .map(BatchForecastResult::error)
+                .toList();
+        assertEquals(List.of("Too many forecasts are being retrieved, try again later"), errors);
+    }
+
+    @Test
+    void failureWithoutMessageIsReportedByItsType() {
+        when(forecastService.retrieve(any())).thenAnswer(invocation -> {
+            ForecastService.CacheLookup lookup = invocation.getArgument(0);
+            if (lookup.address().equals(ADDRESSES.getFirst())) {
+                throw new NullPointerException();
+            }
+            return new CacheableWeatherForecast(lookup.address(), forecast(UPDATE_TIME, 1), false, false);
+        });
+
+        List<BatchForecastResult> results = batchForecastService.getForecasts(ADDRESSES.subList(0, 2));
+
+        assertNull(results.getFirst().forecast());
+        assertEquals("NullPointerException", results.getFirst().error());
+        assertNotNull(results.getLast().forecast());
+        assertNull(results.getLast().error());
+    }
+
+    private double shed() {
+        return registry.find("forecast.requests.shed").counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.dierauf.apple.forecast.TestFixtures.awaitUntil;
+import static com.dierauf.apple.forecast.TestFixtures.entry;
+import static com.dierauf.apple.forecast.TestFixtures.gridPoint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for CachePrewarmer.
+ * Runs the pre-warmer on a short interval against a ForecastService with mocked upstream services, to verify that seed
+ * addresses are loaded at startup, and that popular forecasts are refreshed before they expire, but not sooner.
+ */
+class CachePrewarmerTest {
+
+    private static final String ADDRESS = "123 Main St, Springfield, IL 62704";
+    private static final WeatherStation.Properties EXPIRING = gridPoint(63);
+    private static final WeatherStation.Properties FRESH = gridPoint(64);
+
+    private final LocationService locationService = mock(LocationService.class);
+    private final WeatherService weatherService = mock(WeatherService.class);
+    private final CacheProperties cacheProperties = new CacheProperties();
+    private PopularityTracker popularity;
+    private ForecastService forecastService;
+    private CachePrewarmer prewarmer;
+
+    @BeforeEach
+    void setUp() {
+        cacheProperties.getPrewarm().setInterval(Duration.ofMillis(50));
+        cacheProperties.getPrewarm().setRate(1_000);
+        ForecastMetrics metrics = new ForecastMetrics(new SimpleMeterRegistry());
+        popularity = new PopularityTracker(cacheProperties);
+        forecastService = new ForecastService(locationService, weatherService, new CaffeineCacheManager(),
+                cacheProperties, metrics, new ForecastJsonWriter(new ObjectMapper()), popularity,
+                mock(PeerService.class));
+        prewarmer = new CachePrewarmer(forecastService, popularity, cacheProperties, metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        prewarmer.destroy();
+    }
+
+    @Test
+    void seedAddressesAreLoadedAtStartup() throws InterruptedException {
+        cacheProperties.getPrewarm().setSeedAddresses(List.of(ADDRESS));
+        when(locationService.retrieveLongitudeAndLatitude(ADDRESS))
+                .thenReturn(new AddressRecord("39.78", "-89.65", ADDRESS, null));
+        when(weatherService.resolveGridPoint(anyString(), anyString())).thenReturn(FRESH);
+        when(weatherService.retrieveForecastData(any(), any())).thenReturn(entry(Duration.ofMinutes(30)));
+
+        prewarmer.start();
+
+        verify(weatherService, timeout(5_000)).retrieveForecastData(eq(FRESH), isNull());
+        // Cached just after it is retrieved, on the pre-warmer's thread.
+        awaitUntil(() -> forecastService.findEntryInCache(FRESH.gridPoint()).isPresent());
+        // Seeding is not a request, so it does not make the forecast popular.
+        assertEquals(0, popularity.estimate(FRESH.gridPoint()));
+    }
+
+    @Test
+    void popularForecastsAreRefreshedBeforeTheyExpire() {
+        // Both are cached, but only one expires within refresh-ahead and the interval. Neither has expired yet.
+        when(weatherService.retrieveForecastData(eq(EXPIRING), any())).thenReturn(entry(Duration.ofMinutes(3)));
+        when(weatherService.retrieveForecastData(eq(FRESH), any())).thenReturn(entry(Duration.ofMinutes(30)));
+        forecastService.refresh(EXPIRING, Duration.ZERO);
+        forecastService.refresh(FRESH, Duration.ZERO);
+        popularity.record(EXPIRING);
+        popularity.record(FRESH);
+
+        prewarmer.start();
+
+        // Revalidated with the cached entry, so that NWS may answer with 304 Not Modified.
+        verify(weatherService, timeout(5_000)).retrieveForecastData(eq(EXPIRING), notNull());
+        verify(weatherService, after(200).never()).retrieveForecastData(eq(FRESH), notNull());
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.dierauf.apple.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for CircuitBreaker.
+ * Uses explicit timestamps, so that no test sleeps through the open duration.
+ */
+class CircuitBreakerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void opensOnceTheFailureRateOfAFullWindowReachesTheThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 0.5, 30 * SECOND);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state()); // The window is not full yet.
+
+        breaker.onSuccess(0);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(SECOND));
+        assertEquals(29 * SECOND, breaker.remainingOpen(SECOND));
+    }
+
+    @Test
+    void letsASingleTrialCallThroughAfterTheOpenDuration() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0.5, 30 * SECOND);
+        breaker.onFailure(0);
+
+        assertTrue(breaker.tryAcquire(30 * SECOND));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire(30 * SECOND)); // Only one trial at a time.
+        breaker.onFailure(31 * SECOND);
+        assertFalse(breaker.tryAcquire(60 * SECOND)); // Open for another open duration.
+
+        assertTrue(breaker.tryAcquire(61 * SECOND));
+        breaker.onSuccess(61 * SECOND);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void ignoredTrialLetsTheNextCallerTry() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0.5, SECOND);
+        breaker.onFailure(0);
+        assertTrue(breaker.tryAcquire(SECOND));
+
+        breaker.onIgnored();
+
+        assertTrue(breaker.tryAcquire(SECOND));
+    }
+
+}
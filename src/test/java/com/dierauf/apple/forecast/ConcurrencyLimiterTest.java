@@ -0,0 +1,99 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test class for ConcurrencyLimiter.
+ * Verifies that requests beyond the limit are turned away at once, and how the limit adapts, shrinking at most once
+ * for requests that were in flight together.
+ */
+class ConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void requestsBeyondTheLimitAreTurnedAwayAtOnce() throws InterruptedException {
+        ConcurrencyLimiter limiter = limiter(2);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 2; i++) {
+                executor.submit(() -> limiter.execute(() -> {
+                    started.countDown();
+                    await(release);
+                    return "forecast";
+                }));
+            }
+            started.await();
+
+            UpstreamBusyException exception = assertThrows(UpstreamBusyException.class,
+                    () -> limiter.execute(() -> "forecast"));
+
+            assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+            assertEquals(1, registry.get("forecast.requests.shed").counter().count());
+            release.countDown();
+        }
+        assertEquals("forecast", limiter.execute(() -> "forecast")); // Admitted again once the others completed.
+    }
+
+    @Test
+    void limitGrowsWhileUsedAndShrinksWhenTurnedAwayUpstream() {
+        ConcurrencyLimiter limiter = limiter(2);
+
+        limiter.execute(() -> "forecast"); // One of two in flight: the limit is used, so it grows.
+        assertEquals(3, limiter.limit());
+
+        assertThrows(UpstreamBusyException.class, () -> limiter.execute(() -> {
+            throw new UpstreamBusyException("Rate limit of nominatim exceeded", Duration.ofSeconds(1));
+        }));
+        assertEquals(2, limiter.limit()); // 3 * 0.9, rounded down.
+    }
+
+    @Test
+    void requestsTurnedAwayTogetherShrinkTheLimitOnce() throws InterruptedException {
+        ConcurrencyLimiter limiter = limiter(10);
+        CountDownLatch started = new CountDownLatch(5);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 5; i++) {
+                executor.submit(() -> limiter.execute(() -> {
+                    started.countDown();
+                    await(started); // All five are in flight before any is turned away.
+                    throw new UpstreamBusyException("Rate limit of nominatim exceeded", Duration.ofSeconds(1));
+                }));
+            }
+        }
+        assertEquals(9, limiter.limit()); // 10 * 0.9 once, rather than 10 * 0.9^5.
+
+        // A request admitted after the decrease shrinks it again.
+        assertThrows(UpstreamBusyException.class, () -> limiter.execute(() -> {
+            throw new UpstreamBusyException("Rate limit of nominatim exceeded", Duration.ofSeconds(1));
+        }));
+        assertEquals(8, limiter.limit());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ConcurrencyLimiter limiter(int initialLimit) {
+        UpstreamProperties upstreamProperties = new UpstreamProperties();
+        upstreamProperties.getAdaptiveLimit().setInitialLimit(initialLimit);
+        upstreamProperties.getAdaptiveLimit().setMinLimit(1);
+        return new ConcurrencyLimiter(upstreamProperties, new ForecastMetrics(registry));
+    }
+
+}
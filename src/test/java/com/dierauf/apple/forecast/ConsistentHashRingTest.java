@@ -0,0 +1,59 @@
+package com.dierauf.apple.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for ConsistentHashRing.
+ */
+class ConsistentHashRingTest {
+
+    private static final List<String> NODES = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+    private static final int KEYS = 30_000;
+
+    @Test
+    void keysAreSpreadEvenlyAndAssignedTheSameWhateverTheOrderOfNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+        ConsistentHashRing reversed = new ConsistentHashRing(NODES.reversed(), 160);
+        Map<String, Integer> owned = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String key = "ILX/%d,%d".formatted(i % 200, i / 200);
+            String owner = ring.ownerOf(key);
+            assertEquals(owner, reversed.ownerOf(key));
+            owned.merge(owner, 1, Integer::sum);
+        }
+
+        assertEquals(NODES.size(), owned.size());
+        for (int count : owned.values()) {
+            assertTrue(Math.abs(count - KEYS / NODES.size()) < KEYS / 10, "Unevenly spread: " + owned);
+        }
+    }
+
+    @Test
+    void addingNodeOnlyMovesKeysToIt() {
+        ConsistentHashRing ring = new ConsistentHashRing(NODES, 160);
+        String added = "http://d:8080";
+        ConsistentHashRing grown = new ConsistentHashRing(
+                List.of(NODES.get(0), NODES.get(1), NODES.get(2), added), 160);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "ILX/%d,%d".formatted(i % 200, i / 200);
+            String before = ring.ownerOf(key);
+            String after = grown.ownerOf(key);
+            if (!before.equals(after)) {
+                assertEquals(added, after);
+                moved++;
+            }
+        }
+
+        // About a quarter of the keys move to the new node, rather than most keys moving.
+        assertTrue(moved > KEYS / 6 && moved < KEYS / 3, "Moved: " + moved);
+    }
+
+}
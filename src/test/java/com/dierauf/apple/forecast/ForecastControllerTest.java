@@ -1,27 +1,45 @@
 package com.dierauf.apple.forecast;
 
 import com.dierauf.apple.forecast.config.CacheConfig;
+import com.dierauf.apple.forecast.config.UpstreamConfig;
 import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
 import com.dierauf.apple.forecast.dto.WeatherForecast;
 import com.dierauf.apple.forecast.dto.WeatherStation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.client.RestClient;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
-import static com.dierauf.apple.forecast.WeatherService.NWS_URL;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -29,9 +47,10 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * Uses MockMvc to simulate HTTP requests and verify responses.
  * Mocks external REST client interactions to isolate controller logic.
  */
-@WebMvcTest({ForecastController.class, ForecastService.class,
-        LocationService.class, WeatherService.class,
-        CacheConfig.class})
+@WebMvcTest({ForecastController.class, ForecastService.class, BatchForecastService.class,
+        ForecastStreamService.class, LocationService.class, WeatherService.class, ForecastMetrics.class,
+        ForecastJsonWriter.class, ForecastStreamParser.class, PopularityTracker.class, ConcurrencyLimiter.class,
+        PeerService.class, CacheConfig.class, UpstreamConfig.class})
 @Import(MockConfig.class)
 class ForecastControllerTest {
 
@@ -54,13 +73,24 @@ class ForecastControllerTest {
     @Autowired
     private WeatherService weatherService;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     AddressRecord addressRecord = createAddressRecord();
     WeatherStation weatherStation = createWeatherStation();
     WeatherForecast weatherForecast = createWeatherForecast();
 
+    // Every test starts with empty caches.
+    @BeforeEach
+    void clearCaches() {
+        cacheManager.getCacheNames().forEach(name -> Objects.requireNonNull(cacheManager.getCache(name)).clear());
+    }
 
     /**
      * This test exercises the entire flow of retrieving a weather forecast for a given location.
@@ -71,6 +101,7 @@ class ForecastControllerTest {
         mockMvc.perform(get("/forecast").param("address", addressRecord.displayName()))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.isFromCache").value(false))
+                .andExpect(jsonPath("$.isStale").value(false))
                 .andExpect(jsonPath("$.locationName").value(addressRecord.displayName()))
                 .andExpect(jsonPath("$.weatherForecast.properties.updateTime").value(TIME))
                 .andExpect(jsonPath("$.weatherForecast.properties.periods[0].name").value("Tonight"));
@@ -81,17 +112,119 @@ class ForecastControllerTest {
                 .andExpect(jsonPath("$.isFromCache").value(true)); // Checks out ok.
     }
 
+    /**
+     * Cache hits are written from the serialized forecast, identical to what Jackson writes, with an ETag that allows
+     * clients to poll with conditional requests.
+     */
+    @Test
+    void answerConditionalRequestWithNotModified() throws Exception {
+        mockRestClientBuilderForLocation();
+        String etag = mockMvc.perform(get("/forecast").param("address", addressRecord.displayName()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        String body = mockMvc.perform(get("/forecast").param("address", addressRecord.displayName()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andReturn().getResponse().getContentAsString();
+        assertEquals(objectMapper.writeValueAsString(new CacheableWeatherForecast(addressRecord.displayName(),
+                ForecastService.truncatedForecast(weatherForecast), true, false)), body);
+
+        mockMvc.perform(get("/forecast").param("address", addressRecord.displayName())
+                        .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    /**
+     * A stream is answered asynchronously, and starts with the current forecast.
+     */
+    @Test
+    void streamWeatherForecastForLocation() throws Exception {
+        mockRestClientBuilderForLocation();
+        String body = mockMvc.perform(get("/forecast/stream").param("address", addressRecord.displayName()))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("event:forecast\ndata:" + objectMapper.writeValueAsString(new CacheableWeatherForecast(
+                addressRecord.displayName(), ForecastService.truncatedForecast(weatherForecast), false, false))
+                + "\n\n", body);
+    }
+
+    /**
+     * This test exercises the batch endpoint, including duplicate and blank addresses.
+     */
+    @Test
+    void retrieveWeatherForecastsForBatch() throws Exception {
+        mockRestClientBuilderForLocation();
+        mockMvc.perform(post("/forecasts")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                ["123 Main St, Springfield, IL 62704", "123 main street springfield il 62704", " "]
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].address").value("123 Main St, Springfield, IL 62704"))
+                .andExpect(jsonPath("$[0].forecast.weatherForecast.properties.updateTime").value(TIME))
+                .andExpect(jsonPath("$[1].address").value("123 main street springfield il 62704"))
+                .andExpect(jsonPath("$[1].forecast.locationName").value(addressRecord.displayName()))
+                .andExpect(jsonPath("$[2].error").value("Address cannot be empty"));
+
+        // Once cached, the forecast is answered without being retrieved again.
+        mockMvc.perform(post("/forecasts")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"123 Main St, Springfield, IL 62704\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].forecast.isFromCache").value(true));
+    }
+
+    @Test
+    void rejectEmptyBatch() throws Exception {
+        mockMvc.perform(post("/forecasts").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * A request that cannot be served as an upstream service is at its limit is answered with 503 Service Unavailable,
+     * and told when to retry, in whole seconds rounded up.
+     */
+    @Test
+    void answerBusyUpstreamWithServiceUnavailable() throws Exception {
+        mockRestClientBuilderForLocation();
+        UpstreamBusyException busy = new UpstreamBusyException("Rate limit of nominatim exceeded, try again later",
+                Duration.ofMillis(1_500));
+        when(clientBuilder.build().get().retrieve().body(any(ParameterizedTypeReference.class))).thenThrow(busy);
+
+        mockMvc.perform(get("/forecast").param("address", addressRecord.displayName()))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+                .andExpect(content().string("Rate limit of nominatim exceeded, try again later"));
+    }
+
     private void mockRestClientBuilderForLocation() throws URISyntaxException {
         RestClient.RequestHeadersUriSpec requestHeadersUriSpec = mock(RestClient.RequestHeadersUriSpec.class);
         RestClient.ResponseSpec responseSpec = mock(RestClient.ResponseSpec.class);
         when(clientBuilder.build().get()).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.uri(any(Function.class))).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.headers(any(Consumer.class))).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.retrieve()).thenReturn(responseSpec);
         when(responseSpec.body(any(ParameterizedTypeReference.class))).thenReturn(List.of(addressRecord)); // For LocationService.
-        when(responseSpec.body(WeatherForecast.class)).thenReturn(weatherForecast); // For WeatherService.
+        when(requestHeadersUriSpec.exchange(any(RestClient.RequestHeadersSpec.ExchangeFunction.class)))
+                .thenAnswer(invocation -> invocation.<RestClient.RequestHeadersSpec.ExchangeFunction<?>>getArgument(0)
+                        .exchange(mock(HttpRequest.class), forecastResponse())); // For WeatherService.
         when(responseSpec.body(WeatherStation.class)).thenReturn(weatherStation); // For WeatherService.
     }
 
+    private RestClient.RequestHeadersSpec.ConvertibleClientHttpResponse forecastResponse() throws IOException {
+        RestClient.RequestHeadersSpec.ConvertibleClientHttpResponse response =
+                mock(RestClient.RequestHeadersSpec.ConvertibleClientHttpResponse.class);
+        when(response.getStatusCode()).thenReturn(HttpStatus.OK);
+        when(response.getHeaders()).thenReturn(new HttpHeaders());
+        when(response.getBody()).thenReturn(new ByteArrayInputStream(objectMapper.writeValueAsBytes(weatherForecast)));
+        return response;
+    }
+
     WeatherForecast createWeatherForecast() {
         return new WeatherForecast(new WeatherForecast.Properties(TIME, List.of(
                 getPeriod(1, "Tonight"),
@@ -111,7 +244,7 @@ class ForecastControllerTest {
     }
 
     WeatherStation createWeatherStation() {
-        return new WeatherStation(new WeatherStation.Properties(NWS_URL + "/gridpoints/ILX/63,39/forecast"));
+        return new WeatherStation(TestFixtures.GRID_POINT);
     }
 
     private AddressRecord createAddressRecord() {
@@ -0,0 +1,223 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheConfig;
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.dierauf.apple.forecast.TestFixtures.GRID_POINT;
+import static com.dierauf.apple.forecast.TestFixtures.entry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for ForecastService.
+ * Mocks the location and weather services to verify caching and request coalescing in isolation, and that the
+ * forecast cache holds one entry per grid point, whatever the postcode of the addresses in it.
+ */
+class ForecastServiceTest {
+
+    private static final String ADDRESS = "123 Main St, Springfield, IL 62704";
+
+    private final LocationService locationService = mock(LocationService.class);
+    private final WeatherService weatherService = mock(WeatherService.class);
+    private final PeerService peers = mock(PeerService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+    private PopularityTracker popularity;
+    private ForecastService forecastService;
+
+    @BeforeEach
+    void setUp() {
+        CacheProperties cacheProperties = new CacheProperties();
+        popularity = new PopularityTracker(cacheProperties);
+        forecastService = new ForecastService(locationService, weatherService, cacheManager,
+                cacheProperties, new ForecastMetrics(registry), new ForecastJsonWriter(new ObjectMapper()),
+                popularity, peers);
+        when(locationService.retrieveLongitudeAndLatitude(anyString()))
+                .thenReturn(new AddressRecord("39.78", "-89.65", ADDRESS, null));
+        when(weatherService.resolveGridPoint(anyString(), anyString())).thenReturn(GRID_POINT);
+    }
+
+    @Test
+    void concurrentMissesForSameGridPointCallUpstreamOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(weatherService.retrieveForecastData(any(), any())).thenAnswer(invocation -> {
+            release.await();
+            return entry(Duration.ofMinutes(30));
+        });
+
+        List<Future<CacheableWeatherForecast>> results = SingleFlightTest.runConcurrently(
+                () -> forecastService.getForecast(ADDRESS), release);
+
+        for (Future<CacheableWeatherForecast> result : results) {
+            assertEquals(ADDRESS, result.get().locationName());
+        }
+        verify(weatherService, times(1)).retrieveForecastData(any(), any());
+    }
+
+    @Test
+    void secondRequestIsServedFromCache() {
+        when(weatherService.retrieveForecastData(any(), any())).thenReturn(entry(Duration.ofMinutes(30)));
+
+        forecastService.getForecast(ADDRESS);
+        CacheableWeatherForecast second = forecastService.getForecast(ADDRESS);
+
+        assertTrue(second.isFromCache());
+        assertFalse(second.isStale());
+        verify(weatherService, times(1)).retrieveForecastData(any(), any());
+    }
+
+    @Test
+    void addressesInTheSameGridSquareShareOneEntry() {
+        String neighbour = "1 Capitol Ave, Springfield, IL 62701";
+        when(locationService.retrieveLongitudeAndLatitude(neighbour))
+                .thenReturn(new AddressRecord("39.79", "-89.64", neighbour, null));
+        when(weatherService.retrieveForecastData(any(), any())).thenReturn(entry(Duration.ofMinutes(30)));
+
+        forecastService.getForecast(ADDRESS);
+        CacheableWeatherForecast second = forecastService.getForecast(neighbour);
+
+        // Another postcode, but the same grid point, so the forecast is served from its entry, with its own name.
+        assertTrue(second.isFromCache());
+        assertEquals(neighbour, second.locationName());
+        assertEquals(Set.of(GRID_POINT.gridPoint()), cachedKeys());
+        verify(weatherService, times(1)).retrieveForecastData(any(), any());
+    }
+
+    @Test
+    void addressWithoutPostcodeIsCached() {
+        String withoutPostcode = "Lincoln Home, Springfield, IL";
+        when(locationService.retrieveLongitudeAndLatitude(withoutPostcode)).thenReturn(new AddressRecord("39.80",
+                "-89.65", withoutPostcode, new AddressRecord.Address(null, "Jackson St", "Springfield", "Sangamon",
+                "Illinois", " ", "United States", "us")));
+        when(weatherService.retrieveForecastData(any(), any())).thenReturn(entry(Duration.ofMinutes(30)));
+
+        forecastService.getForecast(withoutPostcode);
+        CacheableWeatherForecast second = forecastService.getForecast(withoutPostcode);
+
+        assertTrue(second.isFromCache());
+        assertEquals(Set.of(GRID_POINT.gridPoint()), cachedKeys());
+        verify(weatherService, times(1)).retrieveForecastData(any(), any());
+    }
+
+    @Test
+    void expiredEntryIsServedStaleWhileRefreshing() {
+        ForecastEntry expired = entry(Duration.ofMinutes(-1));
+        when(weatherService.retrieveForecastData(any(), any()))
+                .thenReturn(expired)
+                .thenReturn(entry(Duration.ofMinutes(30)));
+
+        forecastService.getForecast(ADDRESS);
+        CacheableWeatherForecast stale = forecastService.getForecast(ADDRESS);
+
+        assertTrue(stale.isFromCache());
+        assertTrue(stale.isStale());
+        verify(weatherService, timeout(5_000).times(2)).retrieveForecastData(any(), any());
+        // The refresh is conditional on the expired entry's validators. The cached entry is also serialized.
+        verify(weatherService).retrieveForecastData(any(), argThat(previous -> previous != null
+                && previous.expiresAt().equals(expired.expiresAt()) && previous.etag().equals(expired.etag())));
+    }
+
+    @Test
+    void backgroundRefreshIsInterruptedOnShutdown() throws InterruptedException {
+        CountDownLatch refreshing = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(weatherService.retrieveForecastData(any(), any()))
+                .thenReturn(entry(Duration.ofMinutes(-1)))
+                .thenAnswer(invocation -> {
+                    refreshing.countDown();
+                    try {
+                        new CountDownLatch(1).await(); // NWS never answers.
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return entry(Duration.ofMinutes(30));
+                });
+        forecastService.getForecast(ADDRESS);
+        forecastService.getForecast(ADDRESS); // Served stale, and refreshed in the background.
+        assertTrue(refreshing.await(5, TimeUnit.SECONDS));
+
+        forecastService.destroy();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lookupMissIsRetrievedWithoutLookingUpAgain() {
+        AddressRecord addressRecord = new AddressRecord("39.78", "-89.65", ADDRESS, null);
+        when(locationService.findInCache(ADDRESS)).thenReturn(Optional.of(addressRecord));
+        when(weatherService.findGridPointInCache("39.78", "-89.65")).thenReturn(Optional.of(GRID_POINT));
+        when(weatherService.retrieveForecastData(any(), any())).thenReturn(entry(Duration.ofMinutes(30)));
+
+        ForecastService.CacheLookup lookup = forecastService.lookUp(ADDRESS);
+        CacheableWeatherForecast forecast = forecastService.retrieve(lookup);
+
+        assertNull(lookup.forecast());
+        assertFalse(forecast.isFromCache());
+        // The request is counted once, as one forecast cache miss, and the geocode and grid point are not resolved.
+        assertEquals(1, popularity.estimate(GRID_POINT.gridPoint()));
+        assertEquals(1, registry.get("forecast.cache.lookups").tag("result", "miss").timer().count());
+        verify(locationService, never()).retrieveLongitudeAndLatitude(anyString());
+        verify(weatherService, never()).resolveGridPoint(anyString(), anyString());
+    }
+
+    @Test
+    void missIsRetrievedFromOwnerOfGridPoint() {
+        when(peers.retrieveFromOwner(any())).thenReturn(Optional.of(entry(Duration.ofMinutes(30))));
+
+        forecastService.getForecast(ADDRESS);
+        CacheableWeatherForecast second = forecastService.getForecast(ADDRESS);
+
+        // The forecast of the owner is cached here as well, and NWS is left to the owner.
+        assertTrue(second.isFromCache());
+        verify(peers, times(1)).retrieveFromOwner(any());
+        verify(weatherService, never()).retrieveForecastData(any(), any());
+    }
+
+    @Test
+    void peerIsAnsweredWithoutAskingAnotherPeer() {
+        when(weatherService.gridPointOf(GRID_POINT.gridPoint())).thenReturn(GRID_POINT);
+        when(weatherService.retrieveForecastData(any(), any())).thenReturn(entry(Duration.ofMinutes(30)));
+
+        ForecastEntry entry = forecastService.retrieveForPeer(GRID_POINT.gridPoint());
+
+        assertEquals("\"etag\"", entry.etag());
+        verify(peers, never()).retrieveFromOwner(any());
+    }
+
+    // The keys of the forecast cache, as held by Caffeine.
+    private Set<Object> cachedKeys() {
+        Cache cache = Objects.requireNonNull(cacheManager.getCache(CacheConfig.FORECAST_CACHE));
+        return Set.copyOf(((com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache())
+                .asMap().keySet());
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for ForecastStreamParser.
+ * Uses a recorded NWS gridpoint forecast with 14 periods.
+ */
+class ForecastStreamParserTest {
+
+    private final ForecastStreamParser forecastParser = new ForecastStreamParser(new ObjectMapper());
+
+    @Test
+    void parsesUpdateTimeAndFirstPeriods() throws IOException {
+        try (InputStream body = Objects.requireNonNull(getClass().getResourceAsStream("/nws/forecast.json"))) {
+            WeatherForecast weatherForecast = forecastParser.parse(body, 3);
+
+            assertEquals("2025-10-17T17:26:19+00:00", weatherForecast.properties().updateTime());
+            assertEquals(3, weatherForecast.properties().periods().size());
+            WeatherForecast.Properties.Period first = weatherForecast.properties().periods().getFirst();
+            assertEquals(1, first.number());
+            assertEquals("This Afternoon", first.name());
+            assertEquals(62, first.temperature());
+            assertEquals("F", first.temperatureUnit());
+            assertTrue(first.detailedForecast().startsWith("A chance of rain showers"));
+            assertEquals("Saturday", weatherForecast.properties().periods().get(2).name());
+            // The periods left unparsed are still read, so that the connection can be reused.
+            assertEquals(-1, body.read());
+        }
+    }
+
+    @Test
+    void parsesUpdateTimeAfterPeriods() throws IOException {
+        String json = """
+                {"properties": {"periods": [{"number": 1, "name": "Tonight"}, {"number": 2, "name": "Tomorrow"}],
+                                "elevation": {"value": 182.88},
+                                "updateTime": "2025-10-14T20:26:19+00:00"}}
+                """;
+        WeatherForecast weatherForecast = forecastParser.parse(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 1);
+
+        assertEquals("2025-10-14T20:26:19+00:00", weatherForecast.properties().updateTime());
+        assertEquals(1, weatherForecast.properties().periods().size());
+        assertEquals("Tonight", weatherForecast.properties().periods().getFirst().name());
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.StreamProperties;
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.dto.AddressRecord;
+import com.dierauf.apple.forecast.dto.CacheableWeatherForecast;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.UnsupportedEncodingException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import static com.dierauf.apple.forecast.TestFixtures.GRID_POINT;
+import static com.dierauf.apple.forecast.TestFixtures.UPDATE_TIME;
+import static com.dierauf.apple.forecast.TestFixtures.awaitUntil;
+import static com.dierauf.apple.forecast.TestFixtures.forecast;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Test class for ForecastStreamService.
+ * Opens two streams of the same grid point through MockMvc, and polls on a short interval, to verify that one poller
+ * feeds both, that a forecast is sent only when its updateTime changes and a keep-alive otherwise, and that the last
+ * stream to close stops the poller.
+ */
+class ForecastStreamServiceTest {
+
+    private static final String FIRST = "123 Main St, Springfield, IL 62704";
+    private static final String SECOND = "125 Main St, Springfield, IL 62704";
+    private static final String REISSUED = "2025-10-14T21:26:19+00:00";
+
+    private final LocationService locationService = mock(LocationService.class);
+    private final WeatherService weatherService = mock(WeatherService.class);
+    private final ForecastService forecastService = mock(ForecastService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // The forecast the poller finds in the cache.
+    private final AtomicReference<ForecastEntry> cached = new AtomicReference<>(entry(UPDATE_TIME));
+    private ForecastStreamService streamService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        StreamProperties streamProperties = new StreamProperties();
+        streamProperties.setPollInterval(Duration.ofMillis(50));
+        ForecastMetrics metrics = new ForecastMetrics(registry);
+        ForecastJsonWriter jsonWriter = new ForecastJsonWriter(new ObjectMapper());
+        ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter(new UpstreamProperties(), metrics);
+        streamService = new ForecastStreamService(locationService, weatherService, forecastService,
+                concurrencyLimiter, jsonWriter, streamProperties, metrics);
+        mockMvc = MockMvcBuilders.standaloneSetup(new ForecastController(forecastService,
+                mock(BatchForecastService.class), streamService, concurrencyLimiter, metrics, jsonWriter)).build();
+
+        for (String address : List.of(FIRST, SECOND)) {
+            AddressRecord addressRecord = new AddressRecord("39.78", "-89.65", address, null);
+            when(locationService.retrieveLongitudeAndLatitude(address)).thenReturn(addressRecord);
+            when(forecastService.retrieveWeatherForecast(eq(addressRecord), any())).thenReturn(
+                    new CacheableWeatherForecast(address, cached.get().weatherForecast(), false, false));
+        }
+        when(weatherService.resolveGridPoint(anyString(), anyString())).thenReturn(GRID_POINT);
+        when(forecastService.findEntryInCache(GRID_POINT.gridPoint())).thenAnswer(i -> Optional.of(cached.get()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        streamService.destroy();
+    }
+
+    @Test
+    void subscribersOfAGridPointShareOnePoller() throws Exception {
+        MockHttpServletResponse first = subscribe(FIRST).getResponse();
+        MockHttpServletResponse second = subscribe(SECOND).getResponse();
+
+        assertEquals(2, gauge("forecast.stream.subscribers"));
+        assertEquals(1, gauge("forecast.stream.grid.points"));
+        // Both start with the current forecast, and are then kept alive while it is unchanged.
+        awaitUntil(() -> count(first, ":keep-alive") >= 2 && count(second, ":keep-alive") >= 2);
+        assertEquals(1, count(first, "event:forecast"));
+        assertEquals(1, count(second, "event:forecast"));
+
+        cached.set(entry(REISSUED));
+
+        awaitUntil(() -> count(first, REISSUED) == 1 && count(second, REISSUED) == 1);
+        int keepAlives = count(first, ":keep-alive");
+        awaitUntil(() -> count(first, ":keep-alive") >= keepAlives + 2);
+        // The reissued forecast is sent once to each stream, and not again on later polls.
+        assertEquals(2, count(first, "event:forecast"));
+        assertEquals(2, count(second, "event:forecast"));
+        // Refreshed ahead by the poll interval, so that the cached forecast stays fresh until the next poll.
+        verify(forecastService, atLeast(2)).refresh(GRID_POINT, Duration.ofMillis(50));
+    }
+
+    @Test
+    void lastStreamClosedStopsThePoller() throws Exception {
+        MvcResult first = subscribe(FIRST);
+        MvcResult second = subscribe(SECOND);
+        awaitUntil(() -> count(first.getResponse(), ":keep-alive") >= 1);
+
+        first.getRequest().getAsyncContext().complete();
+
+        assertEquals(1, gauge("forecast.stream.subscribers"));
+        assertEquals(1, gauge("forecast.stream.grid.points"));
+        int keepAlives = count(second.getResponse(), ":keep-alive");
+        awaitUntil(() -> count(second.getResponse(), ":keep-alive") > keepAlives);
+
+        second.getRequest().getAsyncContext().complete();
+
+        assertEquals(0, gauge("forecast.stream.subscribers"));
+        assertEquals(0, gauge("forecast.stream.grid.points"));
+        // A poll already under way may still finish, but none are started after it.
+        Thread.sleep(100);
+        clearInvocations(forecastService);
+        verify(forecastService, after(200).never()).refresh(any(), any());
+    }
+
+    private MvcResult subscribe(String address) throws Exception {
+        return mockMvc.perform(get("/forecast/stream").param("address", address))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).gauge().value();
+    }
+
+    private static int count(MockHttpServletResponse response, String text) {
+        try {
+            return response.getContentAsString().split(Pattern.quote(text), -1).length - 1;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ForecastEntry entry(String updateTime) {
+        return TestFixtures.entry(forecast(updateTime, 1), Duration.ofMinutes(30));
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.dierauf.apple.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for GridCell.
+ * Verifies that coordinates fall in the same cell only when they are within the same 0.01° square, on either side of
+ * the equator and the prime meridian, and that no two coordinates in a cell are an NWS grid square or more apart.
+ */
+class GridCellTest {
+
+    // Spacing of the NWS forecast grid.
+    private static final double NWS_GRID_METERS = 2_500;
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    @Test
+    void coordinatesInACellAreLessThanOneNwsGridSquareApart() {
+        // Cells are widest at the equator, so their diagonal is longest there.
+        double diagonal = distance(0, 0, GridCell.CELL_DEGREES, GridCell.CELL_DEGREES);
+
+        assertTrue(diagonal < NWS_GRID_METERS, "Cell diagonal of %.0f m".formatted(diagonal));
+        assertTrue(diagonal > 1_500); // About 1.6 km, as documented.
+    }
+
+    @Test
+    void nearbyCoordinatesShareACell() {
+        assertEquals(new GridCell(3978, -8966), GridCell.of("39.7817", "-89.6501"));
+        assertEquals(GridCell.of("39.7817", "-89.6501"), GridCell.of("39.7899", "-89.6599"));
+    }
+
+    @Test
+    void coordinatesAcrossACellBoundaryDoNotShareACell() {
+        // About 200 m apart, but in adjacent cells.
+        assertNotEquals(GridCell.of("39.7990", "-89.6501"), GridCell.of("39.8010", "-89.6501"));
+        assertNotEquals(GridCell.of("39.7817", "-89.6590"), GridCell.of("39.7817", "-89.6610"));
+    }
+
+    @Test
+    void cellsAreFlooredOnEitherSideOfZero() {
+        assertEquals(new GridCell(0, 0), GridCell.of("0.005", "0.0099"));
+        assertEquals(new GridCell(-1, -1), GridCell.of("-0.005", "-0.0001"));
+    }
+
+    // Great-circle distance between two coordinates, in meters.
+    private static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+    }
+
+}
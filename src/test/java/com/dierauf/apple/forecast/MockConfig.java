@@ -1,9 +1,12 @@
 package com.dierauf.apple.forecast;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.client.RestClient;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -19,9 +22,16 @@ class MockConfig {
         RestClient restClient = mock(RestClient.class);
 
         when(builder.baseUrl(anyString())).thenReturn(builder);
+        when(builder.requestFactory(any())).thenReturn(builder);
         when(builder.build()).thenReturn(restClient);
 
         return builder;
     }
 
+    // Metrics auto-configuration is not part of a web MVC test slice.
+    @Bean
+    MeterRegistry meterRegistry() {
+        return new SimpleMeterRegistry();
+    }
+
 }
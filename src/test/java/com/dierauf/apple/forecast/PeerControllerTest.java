@@ -0,0 +1,104 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.ClusterProperties;
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.config.UpstreamRequestFactories;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for PeerController.
+ * Verifies that only other instances of the cluster are answered, and only for the grid points this instance owns.
+ */
+class PeerControllerTest {
+
+    private static final String SECRET = "secret";
+
+    private final ForecastService forecastService = mock(ForecastService.class);
+    private final ForecastMetrics metrics = new ForecastMetrics(new SimpleMeterRegistry());
+    private PeerService peers;
+    private PeerController controller;
+
+    @BeforeEach
+    void setUp() {
+        ClusterProperties clusterProperties = new ClusterProperties();
+        clusterProperties.setEnabled(true);
+        clusterProperties.setSelf("http://a:8080");
+        clusterProperties.setPeers(List.of("http://a:8080", "http://b:8080"));
+        clusterProperties.setSecret(SECRET);
+        UpstreamRequestFactories requestFactories = mock(UpstreamRequestFactories.class);
+        when(requestFactories.forUpstream(any())).thenReturn(new SimpleClientHttpRequestFactory());
+        peers = new PeerService(RestClient.builder(), clusterProperties, requestFactories, metrics);
+        controller = new PeerController(forecastService, peers,
+                new ConcurrencyLimiter(new UpstreamProperties(), metrics), metrics);
+    }
+
+    @Test
+    void ownedGridPointIsAnsweredToPeers() {
+        GridPoint owned = gridPoint(true);
+        ForecastEntry entry = new ForecastEntry(null, Instant.now(), Instant.now(), null, null);
+        when(forecastService.findFreshEntryInCache(owned)).thenReturn(Optional.empty());
+        when(forecastService.retrieveForPeer(owned)).thenReturn(entry);
+
+        assertSame(entry, controller.getForecastEntry(owned.gridId(), owned.gridX(), owned.gridY(), SECRET));
+    }
+
+    @Test
+    void requestsWithoutTheSecretAreForbidden() {
+        GridPoint owned = gridPoint(true);
+
+        ResponseStatusException missing = assertThrows(ResponseStatusException.class,
+                () -> controller.getForecastEntry(owned.gridId(), owned.gridX(), owned.gridY(), null));
+        ResponseStatusException wrong = assertThrows(ResponseStatusException.class,
+                () -> controller.getForecastEntry(owned.gridId(), owned.gridX(), owned.gridY(), "guess"));
+
+        assertEquals(HttpStatus.FORBIDDEN, missing.getStatusCode());
+        assertEquals(HttpStatus.FORBIDDEN, wrong.getStatusCode());
+        verify(forecastService, never()).retrieveForPeer(any());
+    }
+
+    @Test
+    void gridPointsOwnedElsewhereOrOutOfRangeAreRejected() {
+        GridPoint notOwned = gridPoint(false);
+
+        ResponseStatusException elsewhere = assertThrows(ResponseStatusException.class,
+                () -> controller.getForecastEntry(notOwned.gridId(), notOwned.gridX(), notOwned.gridY(), SECRET));
+        assertThrows(IllegalArgumentException.class, () -> controller.getForecastEntry("ILX", -1, 0, SECRET));
+        assertThrows(IllegalArgumentException.class, () -> controller.getForecastEntry("ILX", 0, 100_000, SECRET));
+        assertThrows(IllegalArgumentException.class, () -> controller.getForecastEntry("../x", 0, 0, SECRET));
+
+        assertEquals(HttpStatus.NOT_FOUND, elsewhere.getStatusCode());
+        verify(forecastService, never()).retrieveForPeer(any());
+    }
+
+    // The first grid point that this instance does, or does not, own.
+    private GridPoint gridPoint(boolean owned) {
+        return IntStream.range(0, 1_000)
+                .mapToObj(x -> new GridPoint("ILX", x, 39))
+                .filter(key -> peers.isOwner(key) == owned)
+                .findFirst()
+                .orElseThrow();
+    }
+
+}
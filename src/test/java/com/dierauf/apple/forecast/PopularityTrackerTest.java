@@ -0,0 +1,61 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.dierauf.apple.forecast.TestFixtures.GRID_POINT;
+import static com.dierauf.apple.forecast.TestFixtures.gridPoint;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for PopularityTracker.
+ * Verifies that the most requested grid points are ranked first, among many requested only once, and that counts are
+ * halved when ranked, not by the requests that make them due for it.
+ */
+class PopularityTrackerTest {
+
+    @Test
+    void mostRequestedGridPointsAreRankedFirst() {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.getPrewarm().setTop(3);
+        PopularityTracker popularity = new PopularityTracker(cacheProperties);
+        for (int x = 0; x < 1_000; x++) {
+            // Grid points 100, 200, and 300 are requested 30, 20, and 10 times, all others once.
+            int requests = switch (x) {
+                case 100 -> 30;
+                case 200 -> 20;
+                case 300 -> 10;
+                default -> 1;
+            };
+            for (int i = 0; i < requests; i++) {
+                popularity.record(gridPoint(x));
+            }
+            if (x % 100 == 99) {
+                popularity.mostPopular(); // As CachePrewarmer does every interval, making room for newcomers.
+            }
+        }
+        popularity.mostPopular(); // Only the most popular are remembered from now on.
+        popularity.record(gridPoint(1_000));
+
+        List<WeatherStation.Properties> mostPopular = popularity.mostPopular();
+
+        assertEquals(List.of(gridPoint(100), gridPoint(200), gridPoint(300)), mostPopular);
+    }
+
+    @Test
+    void countsAreHalvedWhenRankedRatherThanWhenRecorded() {
+        PopularityTracker popularity = new PopularityTracker(new CacheProperties());
+        int requests = 10 * (1 << 14); // Enough for the counters to be due for aging.
+        for (int i = 0; i < requests; i++) {
+            popularity.record(GRID_POINT);
+        }
+
+        assertEquals(requests, popularity.estimate(GRID_POINT.gridPoint()));
+        popularity.mostPopular();
+        assertEquals(requests / 2, popularity.estimate(GRID_POINT.gridPoint()));
+    }
+
+}
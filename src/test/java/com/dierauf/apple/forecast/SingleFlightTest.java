@@ -0,0 +1,102 @@
+package com.dierauf.apple.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test class for SingleFlight.
+ * Verifies that N concurrent callers for the same key result in exactly one call to the loader.
+ */
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = runConcurrently(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return "value";
+        }), release);
+
+        for (Future<String> result : results) {
+            assertEquals("value", result.get());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void concurrentCallersShareOneFailure() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = runConcurrently(() -> singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            await(release);
+            throw new IllegalStateException("upstream failed");
+        }), release);
+
+        for (Future<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, result::get);
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void sequentialCallersEachLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        singleFlight.execute("key", () -> String.valueOf(loads.incrementAndGet()));
+        singleFlight.execute("key", () -> String.valueOf(loads.incrementAndGet()));
+        assertEquals(2, loads.get());
+    }
+
+    // Starts all callers, and releases the loader only once every caller is blocked, either in the loader or waiting
+    // for its result.
+    static <T> List<Future<T>> runConcurrently(Callable<T> call, CountDownLatch release)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        List<Future<T>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CALLERS, runnable -> {
+            Thread thread = new Thread(runnable);
+            threads.add(thread);
+            return thread;
+        })) {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(call));
+            }
+            TestFixtures.awaitUntil(() -> threads.size() == CALLERS
+                    && threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING));
+            release.countDown();
+        }
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.WeatherForecast;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test data and helpers shared by the tests of the services and their configuration.
+ */
+public final class TestFixtures {
+
+    public static final String UPDATE_TIME = "2025-10-14T20:26:19+00:00";
+    public static final WeatherStation.Properties GRID_POINT = gridPoint(63);
+
+    private TestFixtures() {
+    }
+
+    // A grid point of the ILX office, in row 39.
+    public static WeatherStation.Properties gridPoint(int gridX) {
+        return new WeatherStation.Properties(
+                "https://api.weather.gov/gridpoints/ILX/%d,39/forecast".formatted(gridX), "ILX", gridX, 39);
+    }
+
+    public static WeatherForecast forecast(String updateTime, int periods) {
+        List<WeatherForecast.Properties.Period> list = new ArrayList<>();
+        for (int number = 1; number <= periods; number++) {
+            list.add(new WeatherForecast.Properties.Period(number, "Day " + number, "2025-10-15T06:00:00-05:00",
+                    "2025-10-15T18:00:00-05:00", 40 + number, "F",
+                    "https://api.weather.gov/icons/land/day/few?size=medium",
+                    "Mostly sunny, with a high near 40. Northwest wind 5 to 10 mph. ".repeat(4)));
+        }
+        return new WeatherForecast(new WeatherForecast.Properties(updateTime, list));
+    }
+
+    public static ForecastEntry entry(Duration expiresIn) {
+        return entry(forecast(UPDATE_TIME, 1), expiresIn);
+    }
+
+    // Fetched now, to the millisecond, so that entries are unchanged by a round trip through JSON.
+    public static ForecastEntry entry(WeatherForecast forecast, Duration expiresIn) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        return new ForecastEntry(forecast, now, now.plus(expiresIn), "\"etag\"", null);
+    }
+
+    // Waits up to 5 seconds for a condition that other threads make true.
+    public static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean(), "Timed out waiting for the condition");
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.dierauf.apple.forecast;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for TokenBucket.
+ * Uses explicit timestamps, so that waits are exact and no test sleeps.
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void burstIsAdmittedAtOnceThenCallersWaitInOrder() {
+        TokenBucket bucket = new TokenBucket(1, 2, 0);
+
+        assertEquals(0, bucket.reserve(0, 10 * SECOND));
+        assertEquals(0, bucket.reserve(0, 10 * SECOND));
+        // Each further caller waits one token longer than the one before it.
+        assertEquals(SECOND, bucket.reserve(0, 10 * SECOND));
+        assertEquals(2 * SECOND, bucket.reserve(0, 10 * SECOND));
+    }
+
+    @Test
+    void callerThatWouldWaitPastItsDeadlineIsRejectedWithoutReserving() {
+        TokenBucket bucket = new TokenBucket(1, 1, 0);
+        assertEquals(0, bucket.reserve(0, SECOND));
+
+        assertEquals(-1, bucket.reserve(0, SECOND / 2));
+        // The rejected caller did not take the next token.
+        assertEquals(SECOND, bucket.estimateWait(0));
+        assertEquals(SECOND / 2, bucket.reserve(SECOND / 2, SECOND));
+    }
+
+    @Test
+    void idleBucketRefillsUpToItsBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            bucket.reserve(0, 0);
+        }
+
+        long later = 60 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.reserve(later, 0));
+        }
+        assertEquals(-1, bucket.reserve(later, 0));
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.dierauf.apple.forecast.TestFixtures.awaitUntil;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for UpstreamGuard.
+ * Verifies that callers are turned away once too many are waiting, or at their deadline, without using up the rate
+ * limit, that a failing upstream is no longer called once its breaker opens, and that slow calls are hedged without
+ * leaking permits.
+ */
+class UpstreamGuardTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ForecastMetrics metrics = new ForecastMetrics(registry);
+
+    @Test
+    void callersBeyondTheQueueAreTurnedAwayImmediately() throws Exception {
+        UpstreamGuard guard = new UpstreamGuard("test", host(0, 0, 1, Duration.ofSeconds(5)), metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> inFlight = callers.submit(() -> guard.call("get", () -> await(release)));
+            awaitUntil(() -> guard.availablePermits() == 0);
+            Future<Boolean> queued = callers.submit(() -> guard.call("get", () -> true));
+            awaitUntil(() -> guard.waitingCallers() == 1);
+
+            long start = System.nanoTime();
+            UpstreamBusyException exception = assertThrows(UpstreamBusyException.class,
+                    () -> guard.call("get", () -> true));
+
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+            assertEquals(Duration.ofSeconds(5), exception.getRetryAfter());
+            assertEquals(1, rejections("queue-full"));
+            release.countDown();
+            assertTrue(inFlight.get());
+            assertTrue(queued.get());
+        }
+    }
+
+    @Test
+    void callersAreTurnedAwayAtTheirDeadline() throws Exception {
+        UpstreamGuard guard = new UpstreamGuard("test", host(0, 0, 16, Duration.ofMillis(100)), metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> inFlight = callers.submit(() -> guard.call("get", () -> await(release)));
+            awaitUntil(() -> guard.availablePermits() == 0);
+
+            long start = System.nanoTime();
+            assertThrows(UpstreamBusyException.class, () -> guard.call("get", () -> true));
+
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(100).toNanos());
+            assertEquals(1, rejections("concurrency"));
+            release.countDown();
+            assertTrue(inFlight.get());
+        }
+    }
+
+    @Test
+    void tokenIsGivenBackWhenNoSlotFreesUpInTime() throws Exception {
+        // Two calls at once, then one per second.
+        UpstreamGuard guard = new UpstreamGuard("test", host(1, 2, 16, Duration.ofMillis(200)), metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Boolean> inFlight = callers.submit(() -> guard.call("get", () -> await(release)));
+            awaitUntil(() -> guard.availablePermits() == 0);
+            // Given the second token, but no slot.
+            assertThrows(UpstreamBusyException.class, () -> guard.call("get", () -> true));
+            release.countDown();
+            assertTrue(inFlight.get());
+        }
+
+        // Were the token not given back, this call would wait close to a second for the next one, past its deadline.
+        assertTrue(guard.call("get", () -> true));
+        assertEquals(1, rejections("concurrency"));
+        assertEquals(0, rejections("rate-limit"));
+    }
+
+    @Test
+    void failingUpstreamIsNotCalledWhileTheBreakerIsOpen() {
+        UpstreamGuard guard = new UpstreamGuard("test", host(false), metrics);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IllegalStateException.class, () -> guard.call("get", () -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("Upstream failed");
+            }));
+        }
+
+        UpstreamBusyException exception = assertThrows(UpstreamBusyException.class,
+                () -> guard.call("get", calls::incrementAndGet));
+
+        assertEquals(10, calls.get());
+        assertTrue(exception.getRetryAfter().compareTo(Duration.ofSeconds(29)) > 0);
+        assertEquals(1, registry.get("forecast.upstream.circuit.state").tag("state", "open").gauge().value());
+    }
+
+    @Test
+    void slowCallIsHedgedAndTheFirstAnswerWins() {
+        UpstreamGuard guard = new UpstreamGuard("test", host(true), metrics);
+        for (int i = 0; i < 20; i++) {
+            guard.call("get", () -> "fast"); // Recent call times, for the hedge delay.
+        }
+        AtomicInteger calls = new AtomicInteger();
+
+        String answer = guard.call("get", () -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(Duration.ofSeconds(5)); // The original call is slow, its hedge is not.
+                return "slow";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", answer);
+        assertEquals(2, calls.get());
+        assertEquals(1, registry.get("forecast.upstream.hedges").tag("winner", "hedge").counter().count());
+    }
+
+    @Test
+    void everyPermitIsReleasedAfterHedgedCalls() throws Exception {
+        UpstreamGuard guard = new UpstreamGuard("test", host(true, Duration.ZERO), metrics);
+        // Call times jittered around the hedge delay, so that hedges are sent, and calls cancelled, at every stage.
+        // Fewer callers than permits, so that permits are spare for hedges.
+        try (ExecutorService callers = Executors.newFixedThreadPool(2)) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 5_000; i++) {
+                results.add(callers.submit(() -> guard.call("get", () -> {
+                    sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(200_000, 3_000_000)));
+                    return "answer";
+                })));
+            }
+            for (Future<String> result : results) {
+                assertEquals("answer", result.get());
+            }
+        }
+
+        // Cancelled calls release their permit as they wind down.
+        awaitUntil(() -> guard.availablePermits() == 4);
+    }
+
+    private double rejections(String reason) {
+        return registry.find("forecast.upstream.limiter.rejections").tag("reason", reason).counters().stream()
+                .mapToDouble(Counter::count)
+                .sum();
+    }
+
+    // A single slot, rate limited unless the rate is 0, and without hedging.
+    private static UpstreamProperties.Host host(double rateLimit, int burst, int maxQueued, Duration maxWait) {
+        return new UpstreamProperties.Host("http://localhost", 1, Duration.ofSeconds(5), rateLimit, burst, maxQueued,
+                maxWait, new UpstreamProperties.Breaker(10, 0.5, Duration.ofSeconds(30)),
+                new UpstreamProperties.Hedging(false, 0.95, Duration.ofMillis(50)));
+    }
+
+    private static UpstreamProperties.Host host(boolean hedging) {
+        return host(hedging, Duration.ofMillis(50));
+    }
+
+    private static UpstreamProperties.Host host(boolean hedging, Duration minimumHedgeDelay) {
+        return new UpstreamProperties.Host("http://localhost", 4, Duration.ofSeconds(5), 0, 0, 16,
+                Duration.ofSeconds(5), new UpstreamProperties.Breaker(10, 0.5, Duration.ofSeconds(30)),
+                new UpstreamProperties.Hedging(hedging, 0.95, minimumHedgeDelay));
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.dierauf.apple.forecast;
+
+import com.dierauf.apple.forecast.config.CacheProperties;
+import com.dierauf.apple.forecast.config.UpstreamProperties;
+import com.dierauf.apple.forecast.config.UpstreamRequestFactories;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.WeatherStation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RestClient;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.dierauf.apple.forecast.TestFixtures.GRID_POINT;
+import static com.dierauf.apple.forecast.TestFixtures.UPDATE_TIME;
+import static com.dierauf.apple.forecast.TestFixtures.forecast;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for WeatherService.
+ * Answers requests to NWS with canned responses, to verify that a resolved grid point is reused only within its grid
+ * cell, and that a cached forecast is revalidated with its validators, and kept with a new expiry when NWS answers
+ * 304 Not Modified.
+ */
+class WeatherServiceTest {
+
+    private static final String ETAG = "\"forecast-ILX-63-39\"";
+    private static final String LAST_MODIFIED = "Tue, 14 Oct 2025 20:26:19 GMT";
+
+    // Requests sent to NWS, each answered with the next response.
+    private final List<MockClientHttpRequest> requests = new ArrayList<>();
+    private final List<MockClientHttpResponse> responses = new ArrayList<>();
+    private WeatherService weatherService;
+
+    @BeforeEach
+    void setUp() {
+        UpstreamRequestFactories requestFactories = mock(UpstreamRequestFactories.class);
+        when(requestFactories.forUpstream(any())).thenReturn((uri, method) -> {
+            MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
+            request.setResponse(responses.removeFirst());
+            requests.add(request);
+            return request;
+        });
+        weatherService = new WeatherService(RestClient.builder(), new ConcurrentMapCacheManager(),
+                new CacheProperties(), new UpstreamProperties(), requestFactories,
+                new ForecastStreamParser(new ObjectMapper()), new ForecastMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void gridPointIsReusedOnlyWithinItsGridCell() {
+        responses.add(points(GRID_POINT));
+        responses.add(points(GRID_POINT));
+
+        assertEquals(GRID_POINT, weatherService.resolveGridPoint("39.7817", "-89.6501"));
+        assertEquals(GRID_POINT, weatherService.resolveGridPoint("39.7899", "-89.6599"));
+        assertEquals(1, requests.size());
+        // The adjacent cell is resolved on its own, as it may lie in another NWS grid square.
+        assertEquals(GRID_POINT, weatherService.resolveGridPoint("39.7917", "-89.6501"));
+        assertEquals(2, requests.size());
+        assertEquals("/points/39.7917,-89.6501", requests.getLast().getURI().getPath());
+    }
+
+    @Test
+    void notModifiedForecastIsKeptWithANewExpiry() {
+        Instant fetchedAt = Instant.now().minus(20, ChronoUnit.MINUTES);
+        ForecastEntry previous = new ForecastEntry(forecast(UPDATE_TIME, 1), fetchedAt,
+                fetchedAt.plus(15, ChronoUnit.MINUTES), ETAG, LAST_MODIFIED);
+        MockClientHttpResponse notModified = new MockClientHttpResponse(new byte[0], HttpStatus.NOT_MODIFIED);
+        notModified.getHeaders().setCacheControl("public, max-age=900");
+        responses.add(notModified);
+
+        ForecastEntry revalidated = weatherService.retrieveForecastData(GRID_POINT, previous);
+
+        // Asked only for a newer forecast than the cached one.
+        HttpHeaders sent = requests.getFirst().getHeaders();
+        assertEquals(List.of(ETAG), sent.getIfNoneMatch());
+        assertEquals(LAST_MODIFIED, sent.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+        // The cached forecast and its validators are kept, and fresh for max-age from now.
+        assertSame(previous.weatherForecast(), revalidated.weatherForecast());
+        assertEquals(ETAG, revalidated.etag());
+        assertEquals(LAST_MODIFIED, revalidated.lastModified());
+        assertTrue(revalidated.fetchedAt().isAfter(previous.fetchedAt()));
+        assertEquals(revalidated.fetchedAt().plusSeconds(900), revalidated.expiresAt());
+        assertTrue(revalidated.expiresAt().isAfter(Instant.now()));
+    }
+
+    private static MockClientHttpResponse points(WeatherStation.Properties gridPoint) {
+        MockClientHttpResponse response = new MockClientHttpResponse("""
+                {"properties": {"forecast": "%s", "gridId": "%s", "gridX": %d, "gridY": %d}}
+                """.formatted(gridPoint.forecast(), gridPoint.gridId(), gridPoint.gridX(), gridPoint.gridY())
+                .getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response;
+    }
+
+}
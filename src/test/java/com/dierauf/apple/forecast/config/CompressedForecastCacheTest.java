@@ -0,0 +1,113 @@
+package com.dierauf.apple.forecast.config;
+
+import com.dierauf.apple.forecast.TestFixtures;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import com.dierauf.apple.forecast.dto.SerializedForecast;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static com.dierauf.apple.forecast.TestFixtures.UPDATE_TIME;
+import static com.dierauf.apple.forecast.TestFixtures.forecast;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for CompressedForecastCache and the memory budget of the forecast cache.
+ * Verifies that forecasts survive compression unchanged, that cache hits are served without decoding the forecast,
+ * that compressed forecasts weigh less, and that the memory budget follows the maximum heap unless set.
+ */
+class CompressedForecastCacheTest {
+
+    private static final GridPoint GRID_POINT = TestFixtures.GRID_POINT.gridPoint();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void forecastsSurviveCompression() {
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.setCompactForecasts(true);
+        CacheManager cacheManager = new CacheConfig().cacheManager(cacheProperties, objectMapper);
+        Cache cache = cacheManager.getCache(CacheConfig.FORECAST_CACHE);
+        ForecastEntry entry = serialized(entry());
+
+        cache.put(GRID_POINT, entry);
+
+        ForecastEntry fromCache = cache.get(GRID_POINT, ForecastEntry.class);
+        assertEquals(entry.weatherForecast(), fromCache.weatherForecast());
+        assertEquals(entry.expiresAt(), fromCache.expiresAt());
+        assertEquals(entry.etag(), fromCache.etag());
+        assertArrayEquals(entry.serializedForecast().json(), fromCache.serializedForecast().json());
+        assertEquals(entry.serializedForecast().hash(), fromCache.serializedForecast().hash());
+        assertInstanceOf(CompressedForecastCache.CompressedForecast.class, stored(cache));
+    }
+
+    @Test
+    void cacheHitsAreServedWithoutDecodingTheForecast() {
+        // Decoding would fail, as the forecast is not JSON at all.
+        byte[] json = "not a forecast".getBytes(StandardCharsets.UTF_8);
+        ForecastEntry entry = entry().withSerializedForecast(SerializedForecast.of(null, json));
+        Cache cache = new CompressedForecastCache(new CacheConfig().cacheManager(new CacheProperties(), objectMapper)
+                .getCache(CacheConfig.FORECAST_CACHE), objectMapper);
+        cache.put(GRID_POINT, entry);
+
+        ForecastEntry fromCache = cache.get(GRID_POINT, ForecastEntry.class);
+
+        assertArrayEquals(json, fromCache.serializedForecast().json());
+        assertEquals(entry.serializedForecast().hash(), fromCache.serializedForecast().hash());
+        assertEquals(entry.etag(), fromCache.etag());
+        assertThrows(IllegalStateException.class, fromCache::weatherForecast);
+    }
+
+    @Test
+    void compressedForecastsWeighLess() {
+        Cache cache = new CompressedForecastCache(new CacheConfig().cacheManager(new CacheProperties(), objectMapper)
+                .getCache(CacheConfig.FORECAST_CACHE), objectMapper);
+        ForecastEntry entry = serialized(entry());
+        cache.put(GRID_POINT, entry);
+
+        assertTrue(CacheWeights.forecast(GRID_POINT, stored(cache)) * 4 < CacheWeights.forecast(GRID_POINT, entry));
+    }
+
+    @Test
+    void memoryBudgetFollowsTheMaximumHeap() {
+        CacheProperties cacheProperties = new CacheProperties();
+        long maximumHeap = DataSize.ofGigabytes(2).toBytes();
+
+        assertEquals(DataSize.ofMegabytes(512), cacheProperties.getForecast().memoryBudget(maximumHeap));
+        assertNull(cacheProperties.getPoints().memoryBudget(maximumHeap));
+        cacheProperties.getForecast().setMaximumWeight(DataSize.ofMegabytes(64));
+        assertEquals(DataSize.ofMegabytes(64), cacheProperties.getForecast().memoryBudget(maximumHeap));
+    }
+
+    // The value as held by Caffeine.
+    private static Object stored(Cache cache) {
+        return ((com.github.benmanes.caffeine.cache.Cache<?, ?>) cache.getNativeCache()).asMap().get(GRID_POINT);
+    }
+
+    // Long enough for compression to pay off.
+    private static ForecastEntry entry() {
+        return TestFixtures.entry(forecast(UPDATE_TIME, 10), Duration.ofMinutes(30));
+    }
+
+    private ForecastEntry serialized(ForecastEntry entry) {
+        try {
+            return entry.withSerializedForecast(SerializedForecast.of(entry.weatherForecast(),
+                    objectMapper.writeValueAsBytes(entry.weatherForecast())));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
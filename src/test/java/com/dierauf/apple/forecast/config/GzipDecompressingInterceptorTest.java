@@ -0,0 +1,89 @@
+package com.dierauf.apple.forecast.config;
+
+import com.dierauf.apple.forecast.TestFixtures;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test class for GzipDecompressingInterceptor.
+ * Verifies that gzip is asked for, that gzip bodies are decompressed without their encoding and length headers, and
+ * that identity and empty (304 Not Modified) bodies are passed through.
+ */
+class GzipDecompressingInterceptorTest {
+
+    private static final byte[] FORECAST = """
+            {"properties": {"updateTime": "2025-10-14T20:26:19+00:00", "periods": []}}
+            """.getBytes(StandardCharsets.UTF_8);
+
+    private final GzipDecompressingInterceptor interceptor = new GzipDecompressingInterceptor();
+    private final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET,
+            URI.create(TestFixtures.GRID_POINT.forecast()));
+
+    @Test
+    void gzipBodyIsDecompressed() throws IOException {
+        byte[] compressed = gzip(FORECAST);
+        MockClientHttpResponse upstream = new MockClientHttpResponse(compressed, HttpStatus.OK);
+        upstream.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        upstream.getHeaders().setContentLength(compressed.length);
+        upstream.getHeaders().setETag("\"etag\"");
+
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], (r, b) -> upstream)) {
+            assertEquals("gzip", request.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING));
+            assertArrayEquals(FORECAST, response.getBody().readAllBytes());
+            // The length and encoding of the compressed body no longer apply. Other headers are kept.
+            assertFalse(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING));
+            assertFalse(response.getHeaders().containsKey(HttpHeaders.CONTENT_LENGTH));
+            assertEquals("\"etag\"", response.getHeaders().getETag());
+        }
+    }
+
+    @Test
+    void identityBodyIsPassedThrough() throws IOException {
+        MockClientHttpResponse upstream = new MockClientHttpResponse(FORECAST, HttpStatus.OK);
+        upstream.getHeaders().setContentLength(FORECAST.length);
+
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], (r, b) -> upstream)) {
+            assertSame(upstream, response);
+            assertArrayEquals(FORECAST, response.getBody().readAllBytes());
+            assertEquals(FORECAST.length, response.getHeaders().getContentLength());
+        }
+    }
+
+    @Test
+    void emptyNotModifiedBodyIsReadAsEmpty() throws IOException {
+        // Some servers keep Content-Encoding on a 304, whose body is empty rather than an empty gzip stream.
+        MockClientHttpResponse upstream = new MockClientHttpResponse(new byte[0], HttpStatus.NOT_MODIFIED);
+        upstream.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        try (ClientHttpResponse response = interceptor.intercept(request, new byte[0], (r, b) -> upstream)) {
+            assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+            assertEquals(0, response.getBody().readAllBytes().length);
+            assertFalse(response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING));
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+}
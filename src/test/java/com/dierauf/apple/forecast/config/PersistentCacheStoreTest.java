@@ -0,0 +1,68 @@
+package com.dierauf.apple.forecast.config;
+
+import com.dierauf.apple.forecast.TestFixtures;
+import com.dierauf.apple.forecast.dto.ForecastEntry;
+import com.dierauf.apple.forecast.dto.GridPoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.dierauf.apple.forecast.TestFixtures.entry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for PersistentCacheStore.
+ * Verifies that entries survive reopening the store, and that compaction keeps only live entries.
+ */
+class PersistentCacheStoreTest {
+
+    private static final GridPoint GRID_POINT = TestFixtures.GRID_POINT.gridPoint();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entriesSurviveReopening() throws IOException {
+        Path file = directory.resolve("forecasts.jsonl");
+        ForecastEntry entry = entry(Duration.ofMinutes(30));
+        try (PersistentCacheStore store = new PersistentCacheStore(file)) {
+            store.put(GRID_POINT, entry, entry.expiresAt());
+            store.put(new GridPoint("ILX", 1, 1), entry, Instant.now().minusSeconds(1)); // Already expired.
+        }
+
+        try (PersistentCacheStore reopened = new PersistentCacheStore(file)) {
+            assertEquals(entry, reopened.get(GRID_POINT, ForecastEntry.class));
+            assertNull(reopened.get(new GridPoint("ILX", 1, 1), ForecastEntry.class));
+        }
+    }
+
+    @Test
+    void compactionKeepsOnlyLatestLiveEntries() throws IOException {
+        Path file = directory.resolve("forecasts.jsonl");
+        try (PersistentCacheStore store = new PersistentCacheStore(file)) {
+            for (int i = 0; i < 10; i++) {
+                ForecastEntry entry = entry(Duration.ofMinutes(30 + i));
+                store.put(GRID_POINT, entry, entry.expiresAt());
+            }
+            ForecastEntry latest = entry(Duration.ofMinutes(60));
+            store.put(GRID_POINT, latest, latest.expiresAt());
+            long sizeBeforeCompaction = Files.size(file);
+
+            store.compact();
+
+            assertTrue(Files.size(file) < sizeBeforeCompaction);
+            assertEquals(latest, store.get(GRID_POINT, ForecastEntry.class));
+            ForecastEntry afterCompaction = entry(Duration.ofMinutes(90));
+            store.put(GRID_POINT, afterCompaction, afterCompaction.expiresAt());
+            assertEquals(afterCompaction, store.get(GRID_POINT, ForecastEntry.class));
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.dierauf.apple.forecast.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.dierauf.apple.forecast.TestFixtures.awaitUntil;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for TieredCache and TieredCacheManager.
+ * Verifies that values read from disk are promoted into memory, that a restarted cache manager preloads every entry
+ * into memory unless told not to, and that stores are compacted in the background.
+ */
+class TieredCacheTest {
+
+    private static final String CACHE = "geocode";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void valuesReadFromDiskArePromotedIntoMemory() throws IOException {
+        try (PersistentCacheStore disk = new PersistentCacheStore(directory.resolve(CACHE + ".jsonl"))) {
+            disk.put("key", "value", Instant.now().plus(Duration.ofHours(1)));
+            Cache memory = new ConcurrentMapCache(CACHE);
+            TieredCache cache = new TieredCache(memory, disk, String.class, value -> Instant.now().plusSeconds(60));
+
+            assertNull(memory.get("key"));
+            assertEquals("value", cache.get("key", String.class));
+            assertEquals("value", memory.get("key", String.class));
+
+            cache.evict("key");
+
+            assertNull(cache.get("key"));
+            assertNull(disk.get("key", String.class));
+        }
+    }
+
+    @Test
+    void entriesArePreloadedIntoMemoryAfterRestart() {
+        CacheProperties.Persistence persistence = persistence(Duration.ofMinutes(10));
+        TieredCacheManager manager = manager(new ConcurrentMapCacheManager(CACHE), persistence);
+        manager.getCache(CACHE).put("key", "value");
+        manager.destroy();
+
+        ConcurrentMapCacheManager memory = new ConcurrentMapCacheManager(CACHE);
+        TieredCacheManager restarted = manager(memory, persistence);
+
+        assertEquals("value", memory.getCache(CACHE).get("key", String.class));
+        restarted.destroy();
+    }
+
+    @Test
+    void entriesAreLoadedWhenFirstRequestedWithoutPreload() {
+        CacheProperties.Persistence persistence = persistence(Duration.ofMinutes(10));
+        TieredCacheManager manager = manager(new ConcurrentMapCacheManager(CACHE), persistence);
+        manager.getCache(CACHE).put("key", "value");
+        manager.destroy();
+
+        persistence.setPreload(false);
+        ConcurrentMapCacheManager memory = new ConcurrentMapCacheManager(CACHE);
+        TieredCacheManager restarted = manager(memory, persistence);
+
+        assertNull(memory.getCache(CACHE).get("key"));
+        assertEquals("value", restarted.getCache(CACHE).get("key", String.class));
+        assertEquals("value", memory.getCache(CACHE).get("key", String.class));
+        restarted.destroy();
+    }
+
+    @Test
+    void storesAreCompactedInTheBackground() throws Exception {
+        TieredCacheManager manager = manager(new ConcurrentMapCacheManager(CACHE), persistence(Duration.ofMillis(50)));
+        Path file = directory.resolve(CACHE + ".jsonl");
+        try {
+            for (int i = 0; i < 10; i++) {
+                manager.getCache(CACHE).put("key", "value " + i);
+            }
+            long lineLength = Files.size(file) / 10;
+
+            // Only the latest line is left once compacted.
+            awaitUntil(() -> size(file) == lineLength);
+            assertTrue(Files.readString(file).contains("value 9"));
+        } finally {
+            manager.destroy();
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private CacheProperties.Persistence persistence(Duration compactionInterval) {
+        CacheProperties.Persistence persistence = new CacheProperties.Persistence();
+        persistence.setEnabled(true);
+        persistence.setDirectory(directory);
+        persistence.setCompactionInterval(compactionInterval);
+        return persistence;
+    }
+
+    private static TieredCacheManager manager(ConcurrentMapCacheManager memory,
+                                              CacheProperties.Persistence persistence) {
+        TieredCacheManager manager = new TieredCacheManager(memory, persistence);
+        manager.persist(CACHE, String.class, String.class, TieredCacheManager.timeToLive(Duration.ofHours(1)));
+        return manager;
+    }
+
+}
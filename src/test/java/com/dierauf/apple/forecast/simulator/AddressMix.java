@@ -0,0 +1,58 @@
+package com.dierauf.apple.forecast.simulator;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A realistic mix of addresses to request forecasts for. Popularity follows a Zipf distribution, as it does for real
+ * traffic: a few addresses (the big cities) are requested very often, and most addresses rarely.
+ */
+final class AddressMix {
+
+    private static final List<String> STREETS = List.of("Main", "Oak", "Maple", "Cedar", "Elm", "Washington",
+            "Lake", "Hill", "Park", "Pine", "Lincoln", "Jefferson", "Ridge", "Walnut", "Church");
+    private static final List<String> SUFFIXES = List.of("Street", "St", "Avenue", "Ave", "Road", "Rd", "Drive",
+            "Boulevard", "Lane", "Court");
+    private static final List<String> CITIES = List.of("Springfield, IL", "Cupertino, CA", "Austin, TX",
+            "Denver, CO", "Portland, OR", "Columbus, OH", "Raleigh, NC", "Madison, WI", "Boise, ID", "Tampa, FL");
+
+    private final String[] addresses;
+    // Cumulative probability of each address, in order of popularity.
+    private final double[] cumulative;
+
+    /**
+     * @param size     Number of distinct addresses.
+     * @param exponent Zipf exponent. 0 requests every address equally often, 1 is typical of web traffic.
+     * @param seed     Seed for generating the addresses, so that runs are comparable.
+     */
+    AddressMix(int size, double exponent, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        addresses = new String[size];
+        cumulative = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            addresses[rank] = "%d %s %s, %s".formatted(1 + random.nextInt(9_999),
+                    STREETS.get(random.nextInt(STREETS.size())), SUFFIXES.get(random.nextInt(SUFFIXES.size())),
+                    CITIES.get(random.nextInt(CITIES.size())));
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    String next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        // Not found returns (-(insertion point) - 1). The insertion point is the address the sample falls into.
+        int rank = index >= 0 ? index : -index - 1;
+        return addresses[Math.min(rank, addresses.length - 1)];
+    }
+
+    int size() {
+        return addresses.length;
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.dierauf.apple.forecast.simulator;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Training run of the packaged application, for the JDK AOT cache, run by the aot profile with:
+ * mvn -Paot package
+ * Starts the application with the training options against the upstream simulator, and requests forecasts for a mix
+ * of addresses, so that the classes loaded (and, from JDK 25, methods profiled) on the /forecast path are recorded
+ * along with those of startup. The JVM writes the cache as the application is stopped. Settings are system properties:
+ * aot.jar (application jar), aot.training.jvm-args (JVM options of the training run, separated by spaces),
+ * aot.training.duration, and aot.training.rps.
+ */
+public final class AotTraining {
+
+    private AotTraining() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String jar = System.getProperty("aot.jar");
+        List<String> jvmArgs = jvmArgs(System.getProperty("aot.training.jvm-args", ""));
+        Duration duration = DurationStyle.detectAndParse(System.getProperty("aot.training.duration", "10s"));
+        int requestsPerSecond = Integer.getInteger("aot.training.rps", 50);
+        // Fewer addresses than requests, so that both cache misses and hits are exercised.
+        AddressMix addresses = new AddressMix(100, 1.0, 42);
+        try (UpstreamSimulator simulator = UpstreamSimulator.start(SimulatorSettings.instant());
+             // A cold application answers slowly, and would turn away callers queuing for Nominatim. They are to
+             // exercise the path of a cache miss instead.
+             ApplicationProcess application = ApplicationProcess.start(jar, jvmArgs, simulator,
+                     "--forecast.upstream.nominatim.max-queued=1000")) {
+            System.out.println("Training " + jar + " with " + jvmArgs + ", ready after "
+                    + application.awaitReady(Duration.ofMinutes(2)).toMillis() + " ms");
+            LoadReport report = new LoadGenerator(application.url(), addresses, Duration.ofSeconds(10))
+                    .run(requestsPerSecond, duration);
+            System.out.println("Training load: " + report);
+        }
+    }
+
+    static List<String> jvmArgs(String value) {
+        return Arrays.stream(value.trim().split("\\s+"))
+                .filter(arg -> !arg.isEmpty())
+                .toList();
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.dierauf.apple.forecast.simulator;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The packaged forecast application, run in a JVM of its own against the upstream simulator, as it is deployed. Unlike
+ * LoadTest.start, which runs the application in the calling JVM, JVM options such as an AOT cache apply to it alone.
+ * Its output is discarded. Closing the process stops it as a pod is stopped, with SIGTERM, so that the JVM exits
+ * normally, e.g. writing the AOT cache of a training run.
+ */
+final class ApplicationProcess implements AutoCloseable {
+
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    private final Process process;
+    private final long startedAt;
+    private final String url;
+
+    private ApplicationProcess(Process process, long startedAt, int port) {
+        this.process = process;
+        this.startedAt = startedAt;
+        this.url = "http://localhost:" + port;
+    }
+
+    /**
+     * @param jar       Application jar, either the executable jar or the jar of its extracted layout.
+     * @param jvmArgs   JVM options, e.g. -XX:AOTCache=forecast.aot.
+     * @param simulator Upstream simulator the application calls instead of Nominatim and NWS.
+     * @param arguments Application settings, as for LoadTest.start.
+     */
+    static ApplicationProcess start(String jar, List<String> jvmArgs, UpstreamSimulator simulator,
+                                    String... arguments) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        // The JVM running this class, so that the application runs on the same JDK as the build.
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(jvmArgs);
+        command.addAll(List.of("-jar", jar,
+                "--server.port=" + port,
+                "--forecast.upstream.nominatim.base-url=" + simulator.baseUrl(),
+                "--forecast.upstream.nws.base-url=" + simulator.baseUrl(),
+                // Unlike the real Nominatim, the simulator does not mind more than one request per second.
+                "--forecast.upstream.nominatim.rate-limit=0",
+                "--logging.level.com.dierauf.apple.forecast=WARN"));
+        command.addAll(List.of(arguments));
+        long startedAt = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        return new ApplicationProcess(process, startedAt, port);
+    }
+
+    String url() {
+        return url;
+    }
+
+    /**
+     * Waits until the application reports it is ready to accept traffic, as a Kubernetes readiness probe does.
+     *
+     * @return Time from launching the JVM until the application was ready.
+     */
+    Duration awaitReady(Duration timeout) throws InterruptedException {
+        long deadline = startedAt + timeout.toNanos();
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create(url + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(1))
+                .build();
+        while (System.nanoTime() - deadline < 0) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue());
+            }
+            try {
+                if (HTTP_CLIENT.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return Duration.ofNanos(System.nanoTime() - startedAt);
+                }
+            } catch (IOException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Application not ready within " + timeout);
+    }
+
+    @Override
+    public void close() {
+        process.destroy();
+        try {
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new IllegalStateException("Application did not stop within 30 seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.dierauf.apple.forecast.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs several instances of the application as a cluster, on local ports, against the upstream simulator, to verify
+ * that NWS is called once per grid point however many instances the forecast is requested from.
+ */
+class ClusterTest {
+
+    private static final int INSTANCES = 3;
+
+    @Test
+    void forecastsAreRetrievedFromNwsOncePerGridPoint() throws Exception {
+        AddressMix addresses = new AddressMix(10, 0, 42);
+        List<Integer> ports = freePorts();
+        String peers = ports.stream().map(port -> "http://localhost:" + port).collect(Collectors.joining(","));
+        List<ConfigurableApplicationContext> instances = new ArrayList<>();
+        try (UpstreamSimulator simulator = UpstreamSimulator.start(SimulatorSettings.instant())) {
+            for (int port : ports) {
+                instances.add(LoadTest.start(simulator,
+                        "--server.port=" + port,
+                        "--forecast.upstream.nominatim.rate-limit=0",
+                        "--forecast.cache.prewarm.enabled=false",
+                        // The simulator issues forecasts on the quarter hour. Close to it, they would be refreshed
+                        // while the test runs, and so retrieved from NWS twice.
+                        "--forecast.cache.freshness.refresh-ahead=0s",
+                        "--forecast.cluster.enabled=true",
+                        "--forecast.cluster.self=http://localhost:" + port,
+                        "--forecast.cluster.peers=" + peers,
+                        "--forecast.cluster.secret=test-secret"));
+            }
+
+            for (int port : ports) {
+                LoadReport report = new LoadGenerator("http://localhost:" + port, addresses, Duration.ofSeconds(5))
+                        .run(20, Duration.ofSeconds(1));
+                assertEquals(0, report.errors());
+            }
+
+            // Every instance geocodes for itself, but only the owner of a grid point retrieves its forecast.
+            assertTrue(simulator.requestCount(UpstreamSimulator.FORECAST) <= addresses.size());
+        } finally {
+            instances.forEach(ConfigurableApplicationContext::close);
+        }
+    }
+
+    private static List<Integer> freePorts() throws IOException {
+        List<ServerSocket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < INSTANCES; i++) {
+                sockets.add(new ServerSocket(0, 0, InetAddress.getLoopbackAddress()));
+            }
+            return sockets.stream().map(ServerSocket::getLocalPort).toList();
+        } finally {
+            for (ServerSocket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+}
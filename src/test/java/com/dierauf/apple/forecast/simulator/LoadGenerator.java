@@ -0,0 +1,81 @@
+package com.dierauf.apple.forecast.simulator;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives GET /forecast at a fixed rate, over a mix of addresses. The load is open: requests are sent when they are
+ * due, whether or not earlier requests have been answered, as real users do not wait for each other.
+ */
+final class LoadGenerator {
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final URI forecastUri;
+    private final AddressMix addresses;
+    private final Duration timeout;
+
+    /**
+     * @param applicationUrl Root URL of the forecast application, e.g. http://localhost:8080.
+     * @param addresses      Addresses to request forecasts for.
+     * @param timeout        Requests not answered within the timeout count as errors.
+     */
+    LoadGenerator(String applicationUrl, AddressMix addresses, Duration timeout) {
+        this.forecastUri = URI.create(applicationUrl + "/forecast");
+        this.addresses = addresses;
+        this.timeout = timeout;
+    }
+
+    LoadReport run(int requestsPerSecond, Duration duration) {
+        int total = (int) (requestsPerSecond * duration.toNanos() / 1_000_000_000L);
+        long interval = 1_000_000_000L / requestsPerSecond;
+        long[] latencies = new long[total];
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < total; i++) {
+                long due = start + i * interval;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                int request = i;
+                executor.execute(() -> {
+                    if (!send(addresses.next())) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[request] = System.nanoTime() - due;
+                });
+            }
+        } // Waits for every request to be answered, or to time out.
+        return LoadReport.of(errors.get(), Duration.ofNanos(System.nanoTime() - start), latencies);
+    }
+
+    private boolean send(String address) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(forecastUri + "?address="
+                        + URLEncoder.encode(address, StandardCharsets.UTF_8)))
+                .timeout(timeout)
+                .GET()
+                .build();
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+}
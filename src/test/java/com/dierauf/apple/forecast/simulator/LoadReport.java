@@ -0,0 +1,46 @@
+package com.dierauf.apple.forecast.simulator;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Outcome of a load test run. Latencies are measured from when each request was due to be sent, so that time spent
+ * waiting behind a saturated server is included (no coordinated omission).
+ *
+ * @param requests  Requests sent.
+ * @param errors    Requests answered with anything but 200 OK, or not answered at all.
+ * @param elapsed   Time from the first request being due until the last response.
+ * @param latencies Latency of every request, in nanoseconds, sorted.
+ */
+record LoadReport(long requests, long errors, Duration elapsed, long[] latencies) {
+
+    static LoadReport of(long errors, Duration elapsed, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return new LoadReport(sorted.length, errors, elapsed, sorted);
+    }
+
+    double throughput() {
+        return elapsed.isZero() ? 0 : (requests - errors) / (elapsed.toNanos() / 1e9);
+    }
+
+    Duration percentile(double percentile) {
+        if (latencies.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+        return Duration.ofNanos(latencies[Math.clamp(rank - 1, 0, latencies.length - 1)]);
+    }
+
+    @Override
+    public String toString() {
+        return ("requests=%d errors=%d elapsed=%.1fs throughput=%.1f/s p50=%.1fms p99=%.1fms p999=%.1fms max=%.1fms")
+                .formatted(requests, errors, elapsed.toMillis() / 1e3, throughput(), millis(percentile(50)),
+                        millis(percentile(99)), millis(percentile(99.9)), millis(percentile(100)));
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1e6;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.dierauf.apple.forecast.simulator;
+
+import com.dierauf.apple.forecast.ForecastApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test of the forecast application against the upstream simulator, run with:
+ * mvn -Pload-test test-compile exec:java@load-test -Dload.rps=200 -Dload.duration=60s
+ * <p>
+ * Starts the simulator and the application on free local ports, warms the application up, and then drives /forecast
+ * at the target rate, reporting throughput and latency percentiles. Settings are system properties:
+ * load.rps, load.duration, load.warmup, load.addresses (distinct addresses), load.zipf (popularity skew), and
+ * simulator.* (see SimulatorSettings). Application settings, e.g. -Dforecast.upstream.nws.max-concurrency=32, are
+ * passed through to the application.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int requestsPerSecond = Integer.getInteger("load.rps", 50);
+        Duration duration = duration("load.duration", Duration.ofSeconds(30));
+        Duration warmup = duration("load.warmup", Duration.ofSeconds(10));
+        AddressMix addresses = new AddressMix(Integer.getInteger("load.addresses", 10_000),
+                Double.parseDouble(System.getProperty("load.zipf", "1.0")), 42);
+
+        try (UpstreamSimulator simulator = UpstreamSimulator.start(SimulatorSettings.fromSystemProperties());
+             ConfigurableApplicationContext application = start(simulator)) {
+            String applicationUrl = "http://localhost:" + application.getEnvironment().getProperty("local.server.port");
+            LoadGenerator generator = new LoadGenerator(applicationUrl, addresses, Duration.ofSeconds(10));
+            if (warmup.isPositive()) {
+                System.out.println("Warm up:  " + generator.run(requestsPerSecond, warmup));
+            }
+            LoadReport report = generator.run(requestsPerSecond, duration);
+            System.out.println("Measured: " + report);
+            System.out.printf("Upstream requests: search=%d points=%d forecast=%d%n",
+                    simulator.requestCount(UpstreamSimulator.SEARCH),
+                    simulator.requestCount(UpstreamSimulator.POINTS),
+                    simulator.requestCount(UpstreamSimulator.FORECAST));
+        }
+    }
+
+    // Further arguments override application settings, e.g. --forecast.upstream.nominatim.rate-limit=0. The application
+    // listens on a free port, unless given one with --server.port.
+    static ConfigurableApplicationContext start(UpstreamSimulator simulator, String... arguments) {
+        List<String> args = new ArrayList<>(List.of(
+                "--forecast.upstream.nominatim.base-url=" + simulator.baseUrl(),
+                "--forecast.upstream.nws.base-url=" + simulator.baseUrl(),
+                // Logging every request, and the stack trace of every simulated upstream error, would otherwise be
+                // measured as well. Errors are counted in the report instead.
+                "--logging.level.com.dierauf.apple.forecast=WARN",
+                "--logging.level.org.apache.catalina.core=OFF"));
+        args.addAll(List.of(arguments));
+        if (args.stream().noneMatch(argument -> argument.startsWith("--server.port="))) {
+            args.add("--server.port=0");
+        }
+        return SpringApplication.run(ForecastApplication.class, args.toArray(String[]::new));
+    }
+
+    private static Duration duration(String property, Duration defaultValue) {
+        String value = System.getProperty(property);
+        return value != null ? DurationStyle.detectAndParse(value) : defaultValue;
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.dierauf.apple.forecast.simulator;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Behaviour of the simulated upstream services: latency and error rate of each endpoint, and the size of forecast
+ * documents.
+ *
+ * @param search          Nominatim /search.
+ * @param points          NWS /points/{lat},{lon}.
+ * @param forecast        NWS /gridpoints/{office}/{x},{y}/forecast.
+ * @param forecastPeriods Number of periods in each forecast. NWS returns 14.
+ * @param forecastText    Length of the detailed forecast text of each period, in characters.
+ * @param forecastMaxAge  Advertised in Cache-Control, as NWS does.
+ */
+record SimulatorSettings(Endpoint search, Endpoint points, Endpoint forecast, int forecastPeriods, int forecastText,
+                         Duration forecastMaxAge) {
+
+    // Roughly what the real services show from a well connected host.
+    static SimulatorSettings defaults() {
+        return new SimulatorSettings(
+                new Endpoint(Duration.ofMillis(250), Duration.ofMillis(900), 0.005),
+                new Endpoint(Duration.ofMillis(120), Duration.ofMillis(600), 0.01),
+                new Endpoint(Duration.ofMillis(150), Duration.ofMillis(1500), 0.02),
+                14, 200, Duration.ofMinutes(15));
+    }
+
+    // Defaults, overridden by system properties, e.g. -Dsimulator.forecast.p99=3s -Dsimulator.forecast.error-rate=0.1
+    static SimulatorSettings fromSystemProperties() {
+        SimulatorSettings defaults = defaults();
+        return new SimulatorSettings(
+                defaults.search().overriddenBy("simulator.search"),
+                defaults.points().overriddenBy("simulator.points"),
+                defaults.forecast().overriddenBy("simulator.forecast"),
+                Integer.getInteger("simulator.forecast.periods", defaults.forecastPeriods()),
+                Integer.getInteger("simulator.forecast.text", defaults.forecastText()),
+                duration("simulator.forecast.max-age", defaults.forecastMaxAge()));
+    }
+
+    // Instant, error free upstream services, for tests.
+    static SimulatorSettings instant() {
+        Endpoint instant = new Endpoint(Duration.ZERO, Duration.ZERO, 0);
+        return new SimulatorSettings(instant, instant, instant, 14, 200, Duration.ofMinutes(15));
+    }
+
+    /**
+     * Latency is log-normally distributed, given by its median and 99th percentile, which is how upstream latency is
+     * usually reported.
+     *
+     * @param median    Median latency.
+     * @param p99       99th percentile latency. Must not be less than the median.
+     * @param errorRate Fraction of requests answered with 503 Service Unavailable, between 0 and 1.
+     */
+    record Endpoint(Duration median, Duration p99, double errorRate) {
+
+        // Standard normal quantile of the 99th percentile.
+        private static final double Z_99 = 2.326;
+
+        Endpoint {
+            if (p99.compareTo(median) < 0) {
+                throw new IllegalArgumentException("p99 latency must not be less than median latency");
+            }
+            if (errorRate < 0 || errorRate > 1) {
+                throw new IllegalArgumentException("Error rate must be between 0 and 1");
+            }
+        }
+
+        Endpoint overriddenBy(String prefix) {
+            String errorRate = System.getProperty(prefix + ".error-rate");
+            return new Endpoint(duration(prefix + ".median", median), duration(prefix + ".p99", p99),
+                    errorRate != null ? Double.parseDouble(errorRate) : this.errorRate);
+        }
+
+        Duration sampleLatency() {
+            if (median.isZero()) {
+                return Duration.ZERO;
+            }
+            double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+            double gaussian = ThreadLocalRandom.current().nextGaussian();
+            return Duration.ofNanos((long) (median.toNanos() * Math.exp(sigma * gaussian)));
+        }
+
+        boolean sampleError() {
+            return ThreadLocalRandom.current().nextDouble() < errorRate;
+        }
+
+    }
+
+    // Durations are given as in application.properties, e.g. 250ms or 2s.
+    private static Duration duration(String property, Duration defaultValue) {
+        String value = System.getProperty(property);
+        return value != null ? DurationStyle.detectAndParse(value) : defaultValue;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.dierauf.apple.forecast.simulator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Startup benchmark of the packaged application, run after the aot profile has built it with:
+ * mvn -Paot package exec:java@startup-benchmark
+ * Starts the application repeatedly, in a fresh JVM each time, and measures the time until it is ready to accept
+ * traffic: as built by default (the executable jar), and with Spring AOT and the AOT cache of the training run (the
+ * extracted jar). Settings are system properties: aot.executable-jar, aot.jar, aot.jvm-args (JVM options to run with
+ * the AOT cache, separated by spaces), and startup.runs (starts per variant).
+ */
+public final class StartupBenchmark {
+
+    private StartupBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = Integer.getInteger("startup.runs", 5);
+        Map<String, Variant> variants = new LinkedHashMap<>();
+        variants.put("default", new Variant(System.getProperty("aot.executable-jar"), List.of()));
+        variants.put("extracted", new Variant(System.getProperty("aot.jar"), List.of()));
+        variants.put("aot", new Variant(System.getProperty("aot.jar"),
+                AotTraining.jvmArgs(System.getProperty("aot.jvm-args", ""))));
+        try (UpstreamSimulator simulator = UpstreamSimulator.start(SimulatorSettings.instant())) {
+            for (Map.Entry<String, Variant> variant : variants.entrySet()) {
+                // The first start is not measured, so that every variant is measured with the jars in the page cache.
+                startOnce(variant.getValue(), simulator);
+                List<Duration> startups = new ArrayList<>();
+                for (int run = 0; run < runs; run++) {
+                    startups.add(startOnce(variant.getValue(), simulator));
+                }
+                System.out.printf("%-10s %s%n", variant.getKey(), summary(startups));
+            }
+        }
+    }
+
+    private static Duration startOnce(Variant variant, UpstreamSimulator simulator)
+            throws IOException, InterruptedException {
+        try (ApplicationProcess application = ApplicationProcess.start(variant.jar(), variant.jvmArgs(), simulator)) {
+            return application.awaitReady(Duration.ofMinutes(2));
+        }
+    }
+
+    private static String summary(List<Duration> startups) {
+        long[] millis = startups.stream().mapToLong(Duration::toMillis).sorted().toArray();
+        return "ready after min=%d ms median=%d ms max=%d ms (%d runs)".formatted(millis[0],
+                millis[millis.length / 2], millis[millis.length - 1], millis.length);
+    }
+
+    private record Variant(String jar, List<String> jvmArgs) {
+    }
+
+}
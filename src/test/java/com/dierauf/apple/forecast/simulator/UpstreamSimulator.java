@@ -0,0 +1,250 @@
+package com.dierauf.apple.forecast.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Embedded stand-in for Nominatim and the National Weather Service, serving /search, /points/{lat},{lon}, and
+ * /gridpoints/{office}/{x},{y}/forecast on a local port. Responses have the shape of the real ones, and are
+ * deterministic: the same address always geocodes to the same coordinates, and the same coordinates to the same grid
+ * point. Latency and errors are drawn from the configured distributions.
+ * Forecasts carry an ETag and Cache-Control max-age, and conditional requests are answered with 304 Not Modified
+ * until the forecast is next "issued", every max-age.
+ */
+public final class UpstreamSimulator implements AutoCloseable {
+
+    static final String SEARCH = "search";
+    static final String POINTS = "points";
+    static final String FORECAST = "forecast";
+
+    private static final Pattern POINTS_PATH = Pattern.compile("/points/(-?[\\d.]+),(-?[\\d.]+)");
+    private static final Pattern FORECAST_PATH = Pattern.compile("/gridpoints/(\\w+)/(\\d+),(\\d+)/forecast");
+    // Size of an NWS grid square, in degrees (about 2.5 km).
+    private static final double GRID_DEGREES = 0.025;
+    private static final String OFFICE = "SIM";
+
+    private final SimulatorSettings settings;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, AtomicLong> requestCounts = new ConcurrentHashMap<>();
+
+    private UpstreamSimulator(SimulatorSettings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/search", handler(SEARCH, settings.search(), this::search));
+        server.createContext("/points/", handler(POINTS, settings.points(), this::points));
+        server.createContext("/gridpoints/", handler(FORECAST, settings.forecast(), this::forecast));
+        // Every request sleeps through its latency on its own virtual thread.
+        server.setExecutor(executor);
+    }
+
+    public static UpstreamSimulator start(SimulatorSettings settings) throws IOException {
+        UpstreamSimulator simulator = new UpstreamSimulator(settings);
+        simulator.server.start();
+        return simulator;
+    }
+
+    public String baseUrl() {
+        return "http://%s:%d".formatted(server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    // Number of requests received by an endpoint (search, points, or forecast), including failed ones.
+    public long requestCount(String endpoint) {
+        AtomicLong count = requestCounts.get(endpoint);
+        return count != null ? count.get() : 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private HttpHandler handler(String endpoint, SimulatorSettings.Endpoint endpointSettings, Responder responder) {
+        AtomicLong count = requestCounts.computeIfAbsent(endpoint, name -> new AtomicLong());
+        return exchange -> {
+            try (exchange) {
+                count.incrementAndGet();
+                Thread.sleep(endpointSettings.sampleLatency());
+                if (endpointSettings.sampleError()) {
+                    send(exchange, 503, Map.of("title", "Service Unavailable", "status", 503));
+                    return;
+                }
+                responder.respond(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                send(exchange, 500, Map.of("title", "Unexpected Problem", "detail", String.valueOf(e.getMessage())));
+            }
+        };
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        String query = queryParameter(exchange, "q");
+        if (query == null || query.isBlank()) {
+            send(exchange, 400, Map.of("error", "Nothing to search for."));
+            return;
+        }
+        // Spread addresses over the contiguous United States, as the forecast is only available there.
+        SplittableRandom random = new SplittableRandom(query.toLowerCase().hashCode());
+        String lat = String.format(Locale.ROOT, "%.7f", 25 + random.nextDouble() * 24);
+        String lon = String.format(Locale.ROOT, "%.7f", -124 + random.nextDouble() * 57);
+        Map<String, Object> address = new LinkedHashMap<>();
+        address.put("house_number", String.valueOf(1 + random.nextInt(9_999)));
+        address.put("road", "Simulated Road");
+        address.put("town", "Simulated Town");
+        address.put("county", "Simulated County");
+        address.put("state", "Simulated State");
+        address.put("postcode", "%05d".formatted(random.nextInt(100_000)));
+        address.put("country", "United States");
+        address.put("country_code", "us");
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("place_id", random.nextInt(1, Integer.MAX_VALUE));
+        result.put("licence", "Data © OpenStreetMap contributors, ODbL 1.0. http://osm.org/copyright");
+        result.put("osm_type", "way");
+        result.put("lat", lat);
+        result.put("lon", lon);
+        result.put("category", "building");
+        result.put("type", "yes");
+        result.put("display_name", query);
+        result.put("address", address);
+        result.put("boundingbox", List.of(lat, lat, lon, lon));
+        send(exchange, 200, List.of(result));
+    }
+
+    private void points(HttpExchange exchange) throws IOException {
+        Matcher matcher = POINTS_PATH.matcher(exchange.getRequestURI().getPath());
+        if (!matcher.matches()) {
+            send(exchange, 404, Map.of("title", "Not Found", "status", 404));
+            return;
+        }
+        int gridX = (int) Math.floor((Double.parseDouble(matcher.group(2)) + 125) / GRID_DEGREES);
+        int gridY = (int) Math.floor((Double.parseDouble(matcher.group(1)) - 24) / GRID_DEGREES);
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("forecast", "%s/gridpoints/%s/%d,%d/forecast".formatted(baseUrl(), OFFICE, gridX, gridY));
+        properties.put("forecastHourly", "%s/gridpoints/%s/%d,%d/forecast/hourly"
+                .formatted(baseUrl(), OFFICE, gridX, gridY));
+        properties.put("gridId", OFFICE);
+        properties.put("gridX", gridX);
+        properties.put("gridY", gridY);
+        send(exchange, 200, Map.of("type", "Feature", "properties", properties));
+    }
+
+    private void forecast(HttpExchange exchange) throws IOException {
+        Matcher matcher = FORECAST_PATH.matcher(exchange.getRequestURI().getPath());
+        if (!matcher.matches()) {
+            send(exchange, 404, Map.of("title", "Not Found", "status", 404));
+            return;
+        }
+        long maxAgeMillis = Math.max(1, settings.forecastMaxAge().toMillis());
+        long issue = System.currentTimeMillis() / maxAgeMillis;
+        Instant issuedAt = Instant.ofEpochMilli(issue * maxAgeMillis);
+        String etag = "\"%s-%s-%s-%d\"".formatted(matcher.group(1), matcher.group(2), matcher.group(3), issue);
+        long maxAgeSeconds = Duration.between(Instant.now(), issuedAt.plusMillis(maxAgeMillis)).toSeconds();
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "public, max-age=" + Math.max(0, maxAgeSeconds));
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        SplittableRandom random = new SplittableRandom(etag.hashCode());
+        Instant startOfPeriod = issuedAt.truncatedTo(ChronoUnit.HOURS);
+        List<Map<String, Object>> periods = new ArrayList<>();
+        for (int number = 1; number <= settings.forecastPeriods(); number++) {
+            Instant endOfPeriod = startOfPeriod.plus(12, ChronoUnit.HOURS);
+            Map<String, Object> period = new LinkedHashMap<>();
+            period.put("number", number);
+            period.put("name", number % 2 == 1 ? "Day " + (number + 1) / 2 : "Night " + number / 2);
+            period.put("startTime", startOfPeriod.toString());
+            period.put("endTime", endOfPeriod.toString());
+            period.put("isDaytime", number % 2 == 1);
+            period.put("temperature", random.nextInt(-10, 105));
+            period.put("temperatureUnit", "F");
+            period.put("windSpeed", "%d mph".formatted(random.nextInt(0, 30)));
+            period.put("windDirection", "NW");
+            period.put("icon", "https://api.weather.gov/icons/land/day/few?size=medium");
+            period.put("shortForecast", "Simulated");
+            period.put("detailedForecast", detailedForecast(random));
+            periods.add(period);
+            startOfPeriod = endOfPeriod;
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("units", "us");
+        properties.put("generatedAt", Instant.now().toString());
+        properties.put("updateTime", issuedAt.toString());
+        properties.put("periods", periods);
+        send(exchange, 200, Map.of("type", "Feature", "properties", properties));
+    }
+
+    private String detailedForecast(SplittableRandom random) {
+        StringBuilder text = new StringBuilder(settings.forecastText());
+        while (text.length() < settings.forecastText()) {
+            text.append(random.nextBoolean() ? "Mostly sunny, " : "Chance of showers, ");
+        }
+        text.setLength(settings.forecastText());
+        return text.toString();
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", status < 400
+                ? "application/geo+json" : "application/problem+json");
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+            exchange.sendResponseHeaders(status, json.length);
+            exchange.getResponseBody().write(json);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(status, 0); // Chunked, as the compressed length is not known up front.
+        try (OutputStream compressed = new GZIPOutputStream(exchange.getResponseBody())) {
+            compressed.write(json);
+        }
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            if (separator > 0 && parameter.substring(0, separator).equals(name)) {
+                return URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface Responder {
+        void respond(HttpExchange exchange) throws IOException;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.dierauf.apple.forecast.simulator;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a short load test of the whole application against the upstream simulator, so that the harness keeps working
+ * as the application changes.
+ */
+class UpstreamSimulatorTest {
+
+    @Test
+    void serveLoadFromSimulatedUpstreams() throws Exception {
+        AddressMix addresses = new AddressMix(20, 1.0, 42);
+        try (UpstreamSimulator simulator = UpstreamSimulator.start(SimulatorSettings.instant());
+             // Unlike the real Nominatim, the simulator does not mind more than one request per second.
+             ConfigurableApplicationContext application = LoadTest.start(simulator,
+                     "--forecast.upstream.nominatim.rate-limit=0")) {
+            String applicationUrl = "http://localhost:" + application.getEnvironment().getProperty("local.server.port");
+
+            LoadReport report = new LoadGenerator(applicationUrl, addresses, Duration.ofSeconds(5))
+                    .run(50, Duration.ofSeconds(1));
+
+            assertEquals(50, report.requests());
+            assertEquals(0, report.errors());
+            assertTrue(report.percentile(50).compareTo(report.percentile(99.9)) <= 0);
+            // Every address is geocoded once, and then answered from the cache.
+            assertTrue(simulator.requestCount(UpstreamSimulator.SEARCH) <= addresses.size());
+        }
+    }
+
+}